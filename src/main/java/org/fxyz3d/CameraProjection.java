@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import javafx.scene.Node;
+import javafx.scene.PerspectiveCamera;
+import javafx.scene.transform.NonInvertibleTransformException;
+import javafx.scene.transform.Transform;
+
+/**
+ * Snapshot of the projection from the local coordinates of a node to the screen of a
+ * perspective camera (with the eye at the camera origin, looking towards +Z). It is
+ * computed once per frame, so that many bounding spheres can then be tested against
+ * the view frustum, or measured in screen pixels, without per-node transforms.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class CameraProjection {
+
+    // Node-local to camera-local affine transform
+    private final double mxx, mxy, mxz, tx, myx, myy, myz, ty, mzx, mzy, mzz, tz;
+    private final double scale;        // (largest axis scale of the transform)
+    private final double th, tv;       // tangents of the half fields of view
+    private final double hx, hz, vy, vz; // unit normal components of the side planes
+    private final double near;
+    private final double focal;        // pixels per unit at distance 1
+    private final double half_width, half_height;
+
+    /**
+     * @param camera the camera (in the same scene as the node)
+     * @param node the node whose local coordinates are used
+     * @param width viewport width in pixels
+     * @param height viewport height in pixels
+     */
+    public CameraProjection(PerspectiveCamera camera, Node node, double width, double height)
+            throws NonInvertibleTransformException {
+        Transform t = camera.getLocalToSceneTransform().createInverse()
+                            .createConcatenation(node.getLocalToSceneTransform());
+        mxx = t.getMxx(); mxy = t.getMxy(); mxz = t.getMxz(); tx = t.getTx();
+        myx = t.getMyx(); myy = t.getMyy(); myz = t.getMyz(); ty = t.getTy();
+        mzx = t.getMzx(); mzy = t.getMzy(); mzz = t.getMzz(); tz = t.getTz();
+        scale = Math.max(Math.sqrt(mxx*mxx+myx*myx+mzx*mzx),
+                Math.max(Math.sqrt(mxy*mxy+myy*myy+mzy*mzy), Math.sqrt(mxz*mxz+myz*myz+mzz*mzz)));
+
+        double aspect = width/Math.max(1, height);
+        double half = Math.toRadians(camera.getFieldOfView())/2;
+        if (camera.isVerticalFieldOfView()){
+            tv = Math.tan(half);
+            th = tv*aspect;
+        } else {
+            th = Math.tan(half);
+            tv = th/aspect;
+        }
+        focal = (Math.max(1, height)/2)/tv;
+        half_width = width/2;
+        half_height = height/2;
+        near = camera.getNearClip();
+
+        // (normals of the planes x = ±z*th and y = ±z*tv, pointing inwards)
+        double lh = Math.sqrt(1+th*th), lv = Math.sqrt(1+tv*tv);
+        hx = 1/lh; hz = th/lh;
+        vy = 1/lv; vz = tv/lv;
+    }
+
+    /**
+     * @return true if a sphere (in node-local coordinates) intersects the view frustum
+     */
+    public boolean visible(double x, double y, double z, double radius){
+        double cx = mxx*x+mxy*y+mxz*z+tx;
+        double cy = myx*x+myy*y+myz*z+ty;
+        double cz = mzx*x+mzy*y+mzz*z+tz;
+        double r = radius*scale;
+        if (cz+r<near)
+            return false;
+        if (hz*cz-hx*cx<-r || hz*cz+hx*cx<-r)
+            return false;
+        return !(vz*cz-vy*cy<-r || vz*cz+vy*cy<-r);
+    }
+
+    /**
+     * Projects a point (in node-local coordinates) to the viewport.
+     *
+     * @param out receives the x and y pixel coordinates
+     * @return false if the point is not in front of the camera
+     */
+    public boolean project(double x, double y, double z, double[] out){
+        double cx = mxx*x+mxy*y+mxz*z+tx;
+        double cy = myx*x+myy*y+myz*z+ty;
+        double cz = mzx*x+mzy*y+mzz*z+tz;
+        if (cz<=near)
+            return false;
+        out[0] = half_width+cx*focal/cz;
+        out[1] = half_height+cy*focal/cz;
+        return true;
+    }
+
+    /**
+     * Projects every stride-th point of an array in bulk, as project() and pixels().
+     *
+     * @param points x, y, z per point (in node-local coordinates)
+     * @param from first projected point (k, for the point at k*stride)
+     * @param to end of the projected points (exclusive)
+     * @param out receives, at k*4, the x and y pixel coordinates, the depth (the distance
+     * from the eye along the view direction, in node-local units) and the pixels per unit,
+     * with NaN x if not in front of the camera
+     */
+    public void project(float[] points, int stride, int from, int to, float[] out){
+        // (in locals, so that they stay in registers)
+        double xx = mxx, xy = mxy, xz = mxz, x0 = tx, yx = myx, yy = myy, yz = myz, y0 = ty;
+        double zx = mzx, zy = mzy, zz = mzz, z0 = tz, n = near, f = focal, w = half_width, h = half_height;
+        double s = scale;
+        for (int k=from; k<to; k++){
+            int i = k*stride*3, o = k*4;
+            double x = points[i], y = points[i+1], z = points[i+2];
+            double cz = zx*x+zy*y+zz*z+z0;
+            if (!(cz>n)){ // (also for NaN coordinates)
+                out[o] = Float.NaN;
+                continue;
+            }
+            double p = f/cz;
+            out[o] = (float) (w+(xx*x+xy*y+xz*z+x0)*p);
+            out[o+1] = (float) (h+(yx*x+yy*y+yz*z+y0)*p);
+            out[o+2] = (float) (cz/s);
+            out[o+3] = (float) (s*p);
+        }
+    }
+
+    /**
+     * @return true if two projections (either may be null) are the same
+     */
+    public static boolean same(CameraProjection a, CameraProjection b){
+        if (a==null || b==null)
+            return a==b;
+        return a.mxx==b.mxx && a.mxy==b.mxy && a.mxz==b.mxz && a.tx==b.tx
+            && a.myx==b.myx && a.myy==b.myy && a.myz==b.myz && a.ty==b.ty
+            && a.mzx==b.mzx && a.mzy==b.mzy && a.mzz==b.mzz && a.tz==b.tz
+            && a.focal==b.focal && a.half_width==b.half_width && a.half_height==b.half_height && a.near==b.near;
+    }
+
+    /**
+     * @return the approximate size in pixels of a length (in node-local units)
+     * at a position (in node-local coordinates), or infinity if it is at the eye
+     */
+    public double pixels(double x, double y, double z, double length){
+        double cz = mzx*x+mzy*y+mzz*z+tz;
+        if (cz<=near)
+            return Double.POSITIVE_INFINITY;
+        return length*scale*focal/cz;
+    }
+}
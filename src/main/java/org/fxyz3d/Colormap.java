@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+
+/**
+ * Colour palettes (viridis and a few others), precomputed into lookup tables and a palette
+ * texture image, so that batched meshes can express per-point colours as texture coordinates.
+ * The texture has one column per palette entry (plus one for the default point colour)
+ * and one row per quantised transparency level and fog level (the colour blended towards
+ * the background, for the depth of the point). For individual shapes, there is also
+ * a shared material per palette entry and transparency level, which is changed in place
+ * when switching to another palette, so that this costs as much as the size of the
+ * palette, regardless of the points (only the current palette is used for the texture
+ * and the shared materials).
+ *
+ * @author Philippos Papaphilippou
+ */
+public final class Colormap {
+
+    public static final int SIZE = 256;            // palette entries
+    public static final int DEFAULT = SIZE;        // texture column of points without colour coding
+    public static final int ALPHA_LEVELS = 20;     // texture rows (transparency steps)
+    public static final int FOG_LEVELS = 16;       // groups of texture rows (depth steps)
+
+    public static final Color DEFAULT_COLOR = Color.color(0, 0.8, 0);
+    public static final Color FOG_COLOR = Color.WHITE;   // (the background)
+
+    public static final String[] PALETTES = {"viridis", "magma", "inferno", "plasma", "cividis", "grey"};
+
+    // Palette colours at equally spaced positions (matplotlib colormaps), interpolated into the tables
+    private static final int[][] STOPS = {
+        null, // (polynomial fit below)
+        {0x000004, 0x1c1044, 0x4f127b, 0x812581, 0xb5367a, 0xe55064, 0xfb8761, 0xfec287, 0xfcfdbf},
+        {0x000004, 0x1f0c48, 0x550f6d, 0x88226a, 0xba3655, 0xe35933, 0xf98e09, 0xf9cb35, 0xfcffa4},
+        {0x0d0887, 0x4c02a1, 0x7e03a8, 0xa92395, 0xcc4778, 0xe66c5c, 0xf89540, 0xfdc527, 0xf0f921},
+        {0x00224e, 0x123570, 0x3b496c, 0x575d6d, 0x707173, 0x8a8779, 0xa69d75, 0xc4b56c, 0xfee838},
+        {0x1a1a1a, 0xe6e6e6}
+    };
+
+    // Texture coordinates of the palette entries, and of the transparency levels per fog level
+    static final float[] U = new float[SIZE+1], V = new float[ALPHA_LEVELS*FOG_LEVELS];
+
+    private static final Color[][] tables = new Color[PALETTES.length][SIZE];
+    // (materials and the texture are created on the plot builder thread as well, so they
+    // are only created and changed while holding the lock of the class; they are only
+    // assigned to nodes on the JavaFX thread)
+    private static volatile Color[] palette;
+    private static volatile int current = 0;
+    private static volatile double fog = 0;
+    private static Image texture;
+    private static final PhongMaterial[] materials = new PhongMaterial[(SIZE+1)*ALPHA_LEVELS*FOG_LEVELS];
+
+    static {
+        for (int i=0; i<SIZE; i++){
+            double x = i/(SIZE-1.0);
+            // Viridis colour palette (polynomial fit)
+            double r,g,b;
+            r= x*x*x*-1215.35 + x*x*2144.48 + x*-733.556 + 60.4242;
+            g= x*x*x* 548.202 + x*x*-960.762+ x* 620.136 + 38.2424;
+            b= x*x*x* 837.818 + x*x*-1588.92 + x*625.281 + 146.576;
+            r=Math.floor(Math.min(255,Math.max(0,r)))/255;
+            g=Math.floor(Math.min(255,Math.max(0,g)))/255;
+            b=Math.floor(Math.min(255,Math.max(0,b)))/255;
+            tables[0][i] = Color.color(r, g, b);
+
+            // The others by linear interpolation between their stops
+            for (int p=1; p<PALETTES.length; p++){
+                int[] stops = STOPS[p];
+                double pos = x*(stops.length-1);
+                int k = Math.min(stops.length-2, (int) pos);
+                double t = pos-k;
+                Color c0 = Color.rgb(stops[k]>>16, (stops[k]>>8)&0xff, stops[k]&0xff);
+                Color c1 = Color.rgb(stops[k+1]>>16, (stops[k+1]>>8)&0xff, stops[k+1]&0xff);
+                tables[p][i] = c0.interpolate(c1, t);
+            }
+        }
+        palette = tables[0];
+        for (int i=0; i<=SIZE; i++)
+            U[i] = u(i);
+        for (int f=0; f<FOG_LEVELS; f++)
+            for (int l=0; l<ALPHA_LEVELS; l++)
+                V[f*ALPHA_LEVELS+l] = v(l, f);
+    }
+
+    private Colormap() { }
+
+    /**
+     * @param x normalised value (0 to 1)
+     * @return the palette entry for the value (NaN maps to the first entry)
+     */
+    public static int index(double x){
+        if (Double.isNaN(x))
+            return 0;
+        return (int) Math.round(Math.min(1, Math.max(0, x))*(SIZE-1));
+    }
+
+    /**
+     * @param alpha opacity (0 to 1)
+     * @return the closest transparency level (texture row)
+     */
+    public static int alpha_level(double alpha){
+        if (Double.isNaN(alpha))
+            return ALPHA_LEVELS-1;
+        return (int) Math.round(Math.min(1, Math.max(1.0/ALPHA_LEVELS, alpha))*ALPHA_LEVELS)-1;
+    }
+
+    public static double alpha(int level){
+        return (level+1)/(double)ALPHA_LEVELS;
+    }
+
+    /**
+     * @param index palette entry, or DEFAULT
+     * @param alpha opacity
+     * @return the corresponding JavaFX colour
+     */
+    public static Color color(int index, double alpha){
+        Color c = index==DEFAULT? DEFAULT_COLOR : palette[index];
+        return Color.color(c.getRed(), c.getGreen(), c.getBlue(), alpha);
+    }
+
+    /**
+     * @param fog_level fog level (0 for none)
+     * @return the colour blended towards FOG_COLOR as much as the fog level
+     */
+    public static Color color(int index, double alpha, int fog_level){
+        Color c = color(index, alpha);
+        if (fog_level==0 || fog==0)
+            return c;
+        double f = 1-Math.pow(1-fog, fog_level/(FOG_LEVELS-1.0));
+        return Color.color(c.getRed()+(FOG_COLOR.getRed()-c.getRed())*f, c.getGreen()+(FOG_COLOR.getGreen()-c.getGreen())*f,
+                           c.getBlue()+(FOG_COLOR.getBlue()-c.getBlue())*f, alpha);
+    }
+
+    /**
+     * Texture coordinates pointing to the centre of a palette texel.
+     */
+    public static float u(int index){
+        return (index+0.5f)/(SIZE+1);
+    }
+
+    public static float v(int alpha_level){
+        return v(alpha_level, 0);
+    }
+
+    public static float v(int alpha_level, int fog_level){
+        return (fog_level*ALPHA_LEVELS+alpha_level+0.5f)/(ALPHA_LEVELS*FOG_LEVELS);
+    }
+
+    /**
+     * @param depth position from the front (0) to the back (1) of the fog
+     * @return the closest fog level
+     */
+    public static int fog_level(double depth){
+        if (Double.isNaN(depth))
+            return 0;
+        return (int) Math.round(Math.min(1, Math.max(0, depth))*(FOG_LEVELS-1));
+    }
+
+    /**
+     * @return the blending at the back of the fog (0 for no fog)
+     */
+    public static double fog(){
+        return fog;
+    }
+
+    /**
+     * Changes the fog, which is the blending of the colours towards FOG_COLOR at the
+     * back (with an exponential falloff towards the front). As with set_palette(), only
+     * the shared materials and the texture change, not the points.
+     */
+    public static synchronized void set_fog(double blending){
+        if (blending==fog)
+            return;
+        fog = blending;
+        texture = null;
+        for (int k=(SIZE+1)*ALPHA_LEVELS; k<materials.length; k++) // (from fog level 1)
+            if (materials[k]!=null)
+                materials[k].setDiffuseColor(material_color(k));
+    }
+
+    private static Color material_color(int k){
+        int row = k/(SIZE+1);
+        return color(k%(SIZE+1), alpha(row%ALPHA_LEVELS), row/ALPHA_LEVELS);
+    }
+
+    /**
+     * @return the index of the current palette (see PALETTES)
+     */
+    public static int palette(){
+        return current;
+    }
+
+    /**
+     * Switches to another palette. The shared materials are changed in place, and the
+     * texture is replaced (see texture()), so nothing depends on the number of points.
+     *
+     * @param p index of the palette (see PALETTES)
+     */
+    public static synchronized void set_palette(int p){
+        if (p==current)
+            return;
+        current = p;
+        palette = tables[p];
+        texture = null;
+        for (int k=0; k<materials.length; k++)
+            if (materials[k]!=null && k%(SIZE+1)!=DEFAULT)
+                materials[k].setDiffuseColor(material_color(k));
+    }
+
+    /**
+     * @return the palette texture of the current palette (shared by all batched meshes)
+     */
+    public static synchronized Image texture(){
+        if (texture==null){
+            WritableImage image = new WritableImage(SIZE+1, ALPHA_LEVELS*FOG_LEVELS);
+            PixelWriter pw = image.getPixelWriter();
+            for (int f=0; f<FOG_LEVELS; f++)
+                for (int l=0; l<ALPHA_LEVELS; l++)
+                    for (int i=0; i<=SIZE; i++)
+                        pw.setColor(i, f*ALPHA_LEVELS+l, color(i, alpha(l), f));
+            texture = image;
+        }
+        return texture;
+    }
+
+    /**
+     * @param index palette entry, or DEFAULT
+     * @param alpha_level transparency level
+     * @return the shared material of the colour (created on first use)
+     */
+    public static PhongMaterial material(int index, int alpha_level){
+        return material(index, alpha_level, 0);
+    }
+
+    /**
+     * @param fog_level fog level (see fog_level())
+     * @return the shared material of the colour in the fog (created on first use)
+     */
+    public static synchronized PhongMaterial material(int index, int alpha_level, int fog_level){
+        int k = (fog_level*ALPHA_LEVELS+alpha_level)*(SIZE+1)+index;
+        if (materials[k]==null){
+            materials[k] = new PhongMaterial();
+            materials[k].setDiffuseColor(material_color(k));
+        }
+        return materials[k];
+    }
+}
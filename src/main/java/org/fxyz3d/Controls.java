@@ -13,36 +13,32 @@ import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.UnsupportedFlavorException;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.StringReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Node;
-import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.Cylinder;
 import javafx.scene.shape.Rectangle;
-import javafx.scene.shape.Shape3D;
 import javafx.util.Pair;
 
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JSpinner;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 
-import org.fxyz3d.shapes.primitives.Text3DMesh;
 
 /** 
  * This is the window that contains all controls related to the plot as GUI elements
@@ -59,11 +55,8 @@ public class Controls extends javax.swing.JFrame {
     // A map of string occurances and their insertion number, per dimension, for non-numerical attributes
     ArrayList<Map<String, Integer>> stringtypes = new ArrayList<Map<String, Integer>>();
     
-    // Numerical part of the datset, per available dimension
-    ArrayList<double[]> dataset = new ArrayList<double[]>();
-    
-    // Same but as strings, e.g. for labels on points
-    ArrayList<String[]> datasetStringed = new ArrayList<String[]>();
+    // The dataset in columns (numerical values and string identifiers, with text on demand)
+    DataTable data = new DataTable();
     
     String[] columns = {"Variable Name", "x", "y","z","z2","z3","z4"};
     
@@ -93,6 +86,9 @@ public class Controls extends javax.swing.JFrame {
         pTypeComboBox.addItem("Sphere");
         pTypeComboBox.addItem("Box");
         pTypeComboBox.addItem("Bar");
+        pTypeComboBox.addItem("Sphere (batched)"); // packed into a few meshes, without the point limit
+        pTypeComboBox.addItem("Box (batched)");
+        pTypeComboBox.addItem("Splat (software)"); // drawn on the CPU behind the axes, see SplatRenderer
         pTypeComboBox.setSelectedIndex(1);
 
         // Enter data delimiters in their combo box
@@ -119,6 +115,7 @@ public class Controls extends javax.swing.JFrame {
         shadow_type.addItem("(Both)");
         shadow_type.addItem("(Exclusive)");
         shadow_type.addItem("(Preselect 1st)");        
+        shadow_type.addItem("Density");
         shadow_type.setSelectedIndex(0);
         
         // Organise radio buttons
@@ -1663,24 +1660,29 @@ public class Controls extends javax.swing.JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     /**
-     * Invoke plot() in Juniper class (in a separate thread).
+     * Invoke plot() in Juniper class (in a separate thread). Plot requests are 
+     * coalesced, and a plot in progress gives up if a newer one is requested.
+     * @see RenderQueue
      */
     private void plotButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_plotButtonActionPerformed
-        if (parent.draw == false)
-            
-            // See https://stackoverflow.com/questions/21083945/how-to-avoid-not-on-fx-application-thread-currentthread-javafx-application-th
-            Platform.runLater(new Runnable() { 
-                @Override
-                public void run() {
-                    parent.plot();
-                    label_borderActionPerformed(evt);
-                    
-                    // Apply tick rotation, since this is stored per newly-generated tick
-                    rotate_tics(xtic_h.isSelected(),0); 
-                    rotate_tics(ytic_h.isSelected(),2);
-                    rotate_tics(ztic_h.isSelected(),1);               
-                }
-            });        
+        // See https://stackoverflow.com/questions/21083945/how-to-avoid-not-on-fx-application-thread-currentthread-javafx-application-th
+        parent.render_queue.post(RenderQueue.PLOT, new Runnable() { 
+            @Override
+            public void run() {
+                // (the points are built in the background, the rest follows when they are shown)
+                parent.plot(new Runnable() {
+                    @Override
+                    public void run() {
+                        label_borderActionPerformed(evt);
+
+                        // Apply tick rotation, since this is stored per newly-generated tick
+                        rotate_tics(xtic_h.isSelected(),0); 
+                        rotate_tics(ytic_h.isSelected(),2);
+                        rotate_tics(ztic_h.isSelected(),1);               
+                    }
+                });
+            }
+        });        
     }//GEN-LAST:event_plotButtonActionPerformed
 
     /**
@@ -1872,102 +1874,60 @@ public class Controls extends javax.swing.JFrame {
         if(returnVal == JFileChooser.CANCEL_OPTION)
             return;
                 
-        String separator = "";
-        switch (fsepComboBox.getSelectedIndex()){
-            case 4:
-            case 0:
-                separator = " ";
-                break;
-            case 1:
-                separator = "\t";
-                break;
-            case 2:
-                separator = ",";
-                break;
-            case 3:
-                separator = ";";
-                break;
-        }
-        
         datasetf = fc.getSelectedFile();
-        dataset.clear();
-        datasetStringed.clear();
-        try (BufferedReader br = new BufferedReader(new FileReader(datasetf))) {
-            String line;
-            int counter = 0;            
+        final CsvLoader loader = new CsvLoader(fsepComboBox.getSelectedIndex(), namesFromLineCheckBox.isSelected());
+        loadButton.setEnabled(false); pasteButton.setEnabled(false);
+        setCursor(java.awt.Cursor.getPredefinedCursor(java.awt.Cursor.WAIT_CURSOR));
+        
+        // Parse in the background (in parallel chunks), so that the window remains responsive
+        new SwingWorker<CsvLoader, Void>() {
+            @Override
+            protected CsvLoader doInBackground() throws IOException {
+                return loader.load(datasetf);
+            }
             
-            // Read file line by line
-            while ((line = br.readLine()) != null) {
-                String[] components = line.split(separator);
-                if (fsepComboBox.getSelectedIndex()==4) components = line.replace("\t", separator).split(separator);
-                if (line.trim().length() == 0)
-                continue;
-
-                // Use the first line to optionally become the variable names
-                if (counter == 0){
-                    if (namesFromLineCheckBox.isSelected()) {
-                        variableNames = components;
-                        for (int i = 0; i < components.length; i++) {
-                            stringtypes.add(new HashMap<String, Integer>());
-                        }
-                    } else {
-                        String[] names = new String[components.length];
-                        for (int i=0; i<components.length; i++){
-                            names[i] = "Parameter " + i;
-                        }
-                        variableNames = names;
-                        for (int i = 0; i < components.length; i++) {
-                            stringtypes.add(new HashMap<String, Integer>());
-                        }                        
-                    }
-                    z4cb2.removeAllItems();
-                    for (int i = 0; i < components.length; i++){ 
-                        z4cb2.addItem(variableNames[i]);
-                    }
-                } 
-                
-                // For all other lines
-                if (counter > 0 || !namesFromLineCheckBox.isSelected()){
-                    double[] fcomp = new double[components.length];
-                    for (int i = 0; i < fcomp.length; i++) {
-                        String in = components[i].replace(",", "");
-                        try {
-                            fcomp[i] = Double.parseDouble(in); // Parse the values as doubles
-                        } catch (NumberFormatException e) {
-                            //if (stringtypes.size()>i){   (only if there is a mismatch between line columns, e.g. 1st line of tab-spaced)
-                            if (in.length()==0){
-                                fcomp[i] = Double.NaN;
-                            } else{ 
-                                // But if it has string, use string appearance number as value instead
-                                if (stringtypes.get(i).containsKey(in)) {
-                                    fcomp[i] = stringtypes.get(i).get(in);
-                                } else {
-                                    stringtypes.get(i).put(in, stringtypes.get(i).size());
-                                    fcomp[i] = stringtypes.get(i).get(in);
-                                }
-                            }//}
-                        }
-                    }
-                    dataset.add(fcomp);
-                    datasetStringed.add(components);
+            @Override
+            protected void done() {
+                loadButton.setEnabled(true); pasteButton.setEnabled(true);
+                setCursor(java.awt.Cursor.getDefaultCursor());
+                try {
+                    dataset_loaded(get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    Logger.getLogger(Controls.class.getName()).log(Level.SEVERE, null, ex);
+                    // TODO: display parsing error messages in the GUI
                 }
-                counter++;
             }
-            plotButton.setEnabled(true); pSizeSlider.setEnabled(true); pTypeComboBox.setEnabled(true); 
-            depthcolors.setEnabled(true); dataViewerLoadButton.setEnabled(true);
-        } catch (IOException ex) {
-            Logger.getLogger(Controls.class.getName()).log(Level.SEVERE, null, ex);
-            // TODO: display parsing error messages in the GUI
+        }.execute();
+    }//GEN-LAST:event_loadButtonActionPerformed
+
+    /**
+     * Adopts newly parsed data, and prepares the GUI elements that depend on the
+     * variables (label selection, assignment table).
+     * 
+     * @param loader the parser holding the results
+     */
+    private void dataset_loaded(CsvLoader loader){
+        if (loader.variableNames.length==0)
+            return;
+        variableNames = loader.variableNames;
+        stringtypes = loader.stringtypes;
+        data = loader.data;
+        
+        z4cb2.removeAllItems();
+        for (String var: variableNames){ 
+            z4cb2.addItem(var);
         }
+        plotButton.setEnabled(true); pSizeSlider.setEnabled(true); pTypeComboBox.setEnabled(true); 
+        depthcolors.setEnabled(true); dataViewerLoadButton.setEnabled(true);
         
         // Populate assignment table
         for (int i=dimAssignmentTable.getModel().getRowCount()-1; i>=0; i--)
             ((DefaultTableModel)dimAssignmentTable.getModel()).removeRow(i);
         for (String var: variableNames){
-            ((DefaultTableModel)dimAssignmentTable.getModel()).addRow(new Object[]{var, false, false, false, false, false, null});
+            ((DefaultTableModel)dimAssignmentTable.getModel()).addRow(new Object[]{var, false, false, false, false, false, false, false/*null*/});
         }
         jTabbedPane.setSelectedIndex(1);
-    }//GEN-LAST:event_loadButtonActionPerformed
+    }
 
     private void exitButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_exitButtonActionPerformed
         System.exit(0);
@@ -1979,7 +1939,7 @@ public class Controls extends javax.swing.JFrame {
     private void pTypeComboBoxItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_pTypeComboBoxItemStateChanged
         if (parent!=null) { // (early initialisation workaround)
             plotButtonActionPerformed(null);
-            boolean allow_shadows = pTypeComboBox.getSelectedIndex()!=2;            
+            boolean allow_shadows = pTypeComboBox.getSelectedIndex()!=2; // (no shadows for bars)
             shadowx1.setEnabled(allow_shadows); shadowy1.setEnabled(allow_shadows); shadowz1.setEnabled(allow_shadows);
             boolean preselected = shadowx1.isSelected() || shadowy1.isSelected() || shadowz1.isSelected();
             shadow_type.setEnabled(allow_shadows);
@@ -1995,29 +1955,26 @@ public class Controls extends javax.swing.JFrame {
         // Record-based table (same as parsing the .csv into a spreadsheet)
         if (button_group_viewer_sources.getElements().nextElement().isSelected()) {
 
-            Class[] types = new Class[variableNames.length];
-            java.util.Arrays.fill(types, java.lang.String.class);
-            Object[][] data = new Object[datasetStringed.size()][variableNames.length];
+            // Cell text is only materialised for the rows that are displayed
+            dataViewerTable.setModel(new javax.swing.table.AbstractTableModel() {
+                public int getRowCount() {
+                    return data.size();
+                }
 
-            for (int i = 0; i < datasetStringed.size(); i++) {
-                for (int j = 0; j < variableNames.length; j++) {
-                    data[i][j] = datasetStringed.get(i)[j];
+                public int getColumnCount() {
+                    return variableNames.length;
                 }
-            }
 
-            // Inline model instantiation for the table 
-            dataViewerTable.setModel(new javax.swing.table.DefaultTableModel(
-                    data,
-                    variableNames
-            ) {
-                boolean[] canEdit = new boolean[variableNames.length];
+                public String getColumnName(int columnIndex) {
+                    return variableNames[columnIndex];
+                }
 
                 public Class getColumnClass(int columnIndex) {
-                    return types[columnIndex];
+                    return java.lang.String.class;
                 }
 
-                public boolean isCellEditable(int rowIndex, int columnIndex) {
-                    return canEdit[columnIndex];
+                public Object getValueAt(int rowIndex, int columnIndex) {
+                    return data.text(rowIndex, columnIndex);
                 }
             });
             dataViewerTable.setAutoResizeMode(javax.swing.JTable.AUTO_RESIZE_ALL_COLUMNS);
@@ -2033,43 +1990,31 @@ public class Controls extends javax.swing.JFrame {
         // Only view the plotted points/dimensions
         } else {
 
-            Class[] types = new Class[parent.dimensions];
             String[] names = new String[]{
                 "x", "y", "z", "z1", "z2", "z3", "z4"
             };
-            java.util.Arrays.fill(types, java.lang.Double.class);
-
-            int count = 0;
-            Object[][] array = new Object[dataset.size()][parent.dimensions];
-
             int[] indexes = variable_selection_light();
-            
-            for (double[] values : dataset) {
 
-                for (int i = 0; i < parent.dimensions; i += 1) {
-                    if (indexes[i] == -1) {
-                        array[count][i] = 0;
-                    } else {
-                        array[count][i] = values[indexes[i]];
-                    }
+            // Values are read from the dataset columns for the rows that are displayed
+            dataViewerTable.setModel(new javax.swing.table.AbstractTableModel() {
+                public int getRowCount() {
+                    return data.size();
                 }
-                count++;
-            }
 
-            // Inline model instantiation for the table 
-            dataViewerTable.setModel(new javax.swing.table.DefaultTableModel(
-                    array,
-                    names
-            ) {
+                public int getColumnCount() {
+                    return parent.dimensions;
+                }
 
-                boolean[] canEdit = new boolean[parent.dimensions];
+                public String getColumnName(int columnIndex) {
+                    return names[columnIndex];
+                }
 
                 public Class getColumnClass(int columnIndex) {
-                    return types[columnIndex];
+                    return java.lang.Double.class;
                 }
 
-                public boolean isCellEditable(int rowIndex, int columnIndex) {
-                    return canEdit[columnIndex];
+                public Object getValueAt(int rowIndex, int columnIndex) {
+                    return indexes[columnIndex] == -1 ? 0.0 : data.get(rowIndex, indexes[columnIndex]);
                 }
             });
             dataViewerTable.setAutoResizeMode(javax.swing.JTable.AUTO_RESIZE_ALL_COLUMNS);
@@ -2095,8 +2040,13 @@ public class Controls extends javax.swing.JFrame {
         int returnVal = fc.showSaveDialog(this);
         if (returnVal==0){
             screenshotf = fc.getSelectedFile();            
-            // The final image will be handled by the Juniper thread
-            parent.screenshot = true;
+            // The final image will be handled by the Juniper thread (on its next frame)
+            parent.render_queue.post("screenshot", new Runnable() {
+                @Override
+                public void run() {
+                    parent.screenshot = true;
+                }
+            });
         }
     }//GEN-LAST:event_imgExportButtonActionPerformed
 
@@ -2111,97 +2061,7 @@ public class Controls extends javax.swing.JFrame {
         try {
             String result = (String) clipboard.getData(DataFlavor.stringFlavor);
 
-            String separator = "";
-            switch (fsepComboBox.getSelectedIndex()) {
-                case 4:
-                case 0:
-                    separator = " ";
-                    break;
-                case 1:
-                    separator = "\t";
-                    break;
-                case 2:
-                    separator = ",";
-                    break;
-                case 3:
-                    separator = ";";
-                    break;                    
-            }
-
-            dataset.clear();
-            datasetStringed.clear();
-            try (BufferedReader br = new BufferedReader(new StringReader(result))) {
-                String line;
-                int counter = 0;
-
-                while ((line = br.readLine()) != null) {
-                    String[] components = line.split(separator);
-                    if (fsepComboBox.getSelectedIndex()==4) components = line.replace("\t", separator).split(separator);
-                    
-                    if (line.trim().length() == 0) {
-                        continue;
-                    }
-
-                    if (counter == 0) {
-                        if (namesFromLineCheckBox.isSelected()) {
-                            variableNames = components;
-                            for (int i = 0; i < components.length; i++) {
-                                stringtypes.add(new HashMap<String, Integer>());
-                            }
-                        } else {
-                            String[] names = new String[components.length];
-                            for (int i = 0; i < components.length; i++) {
-                                names[i] = "Parameter " + i;
-                            }
-                            variableNames = names;
-                            for (int i = 0; i < components.length; i++) {
-                                stringtypes.add(new HashMap<String, Integer>());
-                            }
-                        }
-                        z4cb2.removeAllItems();
-                        for (int i = 0; i < components.length; i++){ 
-                            z4cb2.addItem(variableNames[i]);
-                        }
-                    }
-                    if (counter > 0 || !namesFromLineCheckBox.isSelected()) {
-                        double[] fcomp = new double[components.length];
-                        for (int i = 0; i < fcomp.length; i++) {
-                            String in = components[i].replace(",", "");
-                            try {
-                                fcomp[i] = Double.parseDouble(in);
-                            } catch (NumberFormatException e) {
-                                if (in.length()==0){
-                                    fcomp[i] = Double.NaN;
-                                } else{
-                                    if (stringtypes.get(i).containsKey(in)) {
-                                        fcomp[i] = stringtypes.get(i).get(in);
-                                    } else {
-                                        stringtypes.get(i).put(in, stringtypes.get(i).size());
-                                        fcomp[i] = stringtypes.get(i).get(in);
-                                    }
-                                }
-                            }
-                        }
-                        dataset.add(fcomp);
-                        datasetStringed.add(components);
-                    }
-                    counter++;
-                }
-                plotButton.setEnabled(true); pSizeSlider.setEnabled(true); pTypeComboBox.setEnabled(true); 
-                depthcolors.setEnabled(true); dataViewerLoadButton.setEnabled(true);
-            } catch (IOException ex) {
-                Logger.getLogger(Controls.class.getName()).log(Level.SEVERE, null, ex);
-            }
-
-            for (int i = dimAssignmentTable.getModel().getRowCount() - 1; i >= 0; i--) {
-                ((DefaultTableModel) dimAssignmentTable.getModel()).removeRow(i);
-            }
-            for (String var : variableNames) {
-                ((DefaultTableModel) dimAssignmentTable.getModel()).addRow(new Object[]{var, false, false, false, false, false, false, false/*null*/});
-            }
-
-            jTabbedPane.setSelectedIndex(1);
-
+            dataset_loaded(new CsvLoader(fsepComboBox.getSelectedIndex(), namesFromLineCheckBox.isSelected()).parse(result));
         } catch (UnsupportedFlavorException ex) {
             Logger.getLogger(Controls.class.getName()).log(Level.SEVERE, null, ex);
         } catch (IOException ex) {
@@ -2214,7 +2074,7 @@ public class Controls extends javax.swing.JFrame {
      * new FoV immediately in the plot.
      */
     private void fovSliderStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_fovSliderStateChanged
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post("fov", new Runnable() {
             @Override
             public void run() {
             parent.camera.setFieldOfView(fovSlider.getValue());
@@ -2575,14 +2435,17 @@ public class Controls extends javax.swing.JFrame {
                 Node n = ((Group) ((Pair)parent.tics[ax].get(tic)).getValue()).getChildren().getLast();
                 n.setVisible(show_border_t[ax]);
                 n = ((Group) ((Pair)parent.tics[ax].get(tic)).getValue()).getChildren().getFirst();
-                ((Text3DMesh) n).setTextureModeNone(select?javafx.scene.paint.Color.DARKGRAY:javafx.scene.paint.Color.LIGHTGRAY);
+                if (n instanceof GlyphText)
+                    ((GlyphText) n).setTextureModeNone(select?javafx.scene.paint.Color.DARKGRAY:javafx.scene.paint.Color.LIGHTGRAY);
             }  
         }
+        parent.label_overlay.set_emphasis(LabelOverlay.TICKS, select);
+        parent.label_overlay.set_emphasis(LabelOverlay.POINTS, select);
         for (Object tic : parent.point_labels.getChildren()){
                 Node n = ((Group) tic).getChildren().getLast();
                 n.setVisible(select);
                 n = ((Group) (tic)).getChildren().getFirst();
-                ((Text3DMesh) n).setTextureModeNone(select?javafx.scene.paint.Color.BLACK:javafx.scene.paint.Color.DARKGRAY);
+                ((GlyphText) n).setTextureModeNone(select?javafx.scene.paint.Color.BLACK:javafx.scene.paint.Color.DARKGRAY);
         }
     }//GEN-LAST:event_label_borderActionPerformed
 
@@ -2618,7 +2481,7 @@ public class Controls extends javax.swing.JFrame {
         boolean selected = tics_marks.isSelected();
         for (int ax=0; ax<parent.ticMarksGroups.length; ax++)
             parent.ticMarksGroups[ax].setVisible(selected);
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post(RenderQueue.REFRESH, new Runnable() {
             @Override
             public void run() {
                 try{                    
@@ -2633,16 +2496,12 @@ public class Controls extends javax.swing.JFrame {
      * Grid opacity change directly inside the Juniper class.
      */
     private void grid_opacityStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_grid_opacityStateChanged
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post("grid_opacity", new Runnable() {
             @Override
             public void run() {
                 try {
-                    for (int ax = 0; ax < parent.gridSurfGroups.length; ax++) {
-                        parent.grid_opacity = grid_opacity.getValue() / 100.0;
-                        for (Node n : parent.gridSurfGroups[ax].getChildren()) {
-                            n.setOpacity(grid_opacity.getValue() / 100.0);
-                        }
-                    }
+                    parent.grid_opacity = grid_opacity.getValue() / 100.0;
+                    parent.gridSurfMaterial.setDiffuseColor(javafx.scene.paint.Color.color(0.5, 0.5, 0.5, parent.grid_opacity));
 
                     parent.gridLinesMaterial.setDiffuseColor(javafx.scene.paint.Color.color(0.5, 0.5, 0.5, (10 + grid_opacity.getValue()) / 100.0));
                     parent.gridLinesMaterial.setSpecularColor(javafx.scene.paint.Color.color(0.5, 0.5, 0.5, (10 + grid_opacity.getValue()) / 100.0));
@@ -2686,45 +2545,14 @@ public class Controls extends javax.swing.JFrame {
     }//GEN-LAST:event_shadowz1ActionPerformed
     
     /**
-     * Shadow opacity modification per object inside Juniper class. 
+     * Shadow opacity modification inside Juniper class. 
      */
     private void shadow_opacityStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_shadow_opacityStateChanged
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post("shadow_opacity", new Runnable() {
             @Override
             public void run() {
-                try {
-                    parent.shadow_opacity = shadow_opacity.getValue() / 100.0;
-                    parent.shadowMaterial.setDiffuseColor(javafx.scene.paint.Color.color(0.5, 0.5, 0.5, shadow_opacity.getValue() / 100.0));
-
-                    for (int ax = 0; ax < parent.point_shadow_projections.length; ax++) {
-
-                        double a = shadow_opacity.getValue() / 100.0;
-                        
-                        // This is per object because each point may have a different colour
-                        for (Node n : parent.point_shadow_projections[ax].getChildren()) {
-                            {
-                                PhongMaterial m = (PhongMaterial) ((Shape3D) n).getMaterial();
-                                javafx.scene.paint.Color c = m.getDiffuseColor();
-                                double r = c.getRed();
-                                double g = c.getGreen();
-                                double b = c.getBlue();
-                                m = new PhongMaterial();
-
-                                m.setDiffuseColor(new javafx.scene.paint.Color(r, g, b, a));
-                                ((Shape3D) n).setMaterial(m);
-                            }
-                        }
-                        // JavaFX bug? (it works for boxes just by changing the material)
-                        for (Node n : parent.point_shadows[ax].getChildren()) {
-                            if (pTypeComboBox.getSelectedIndex() == 0) // Spheres                             
-                            {
-                                ((Shape3D) n).setMaterial(parent.shadowMaterial);
-                            }
-
-                        }
-                    }
-                } catch (Exception e) {
-                }
+                // (shared materials, so this does not depend on the number of points)
+                parent.set_shadow_opacity(shadow_opacity.getValue() / 100.0);
             }
         });
     }//GEN-LAST:event_shadow_opacityStateChanged
@@ -2740,35 +2568,30 @@ public class Controls extends javax.swing.JFrame {
     }//GEN-LAST:event_shadow_typeItemStateChanged
     
     /**
-     * Enable/disable colour-mapped points through a boolean, and then replot.
+     * Enable/disable colour-mapped points through a boolean (the plot colours are
+     * restored by depth_color() when disabled, so there is no need to replot).
      */
     private void depthcolorsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_depthcolorsActionPerformed
-        parent.depth_colormap=depthcolors.isSelected();
-        if (!depthcolors.isSelected())
-            plotButtonActionPerformed(null);
-        else
-            Platform.runLater(new Runnable() {
-                @Override
-                public void run() {                   
-                    parent.seeLabels(); // (removing the colours is simpler)
-                }
-            });  
-        
+        final boolean selected = depthcolors.isSelected();
+        parent.render_queue.post(RenderQueue.REFRESH, new Runnable() {
+            @Override
+            public void run() {
+                parent.depth_colormap = selected;
+                parent.seeLabels();
+            }
+        });
+
     }//GEN-LAST:event_depthcolorsActionPerformed
 
     /**
      * Modify fog opacity.
      */
     private void fog_sliderStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_fog_sliderStateChanged
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post("fog", new Runnable() {
             @Override
             public void run() {
-                parent.fog.setVisible(fog_slider.getValue()!=0); 
-                
-                // Per fog rectangle (group opacity change is not supported in JavaFX)
-                for (Node n:parent.fog.getChildren())
-                    n.setOpacity(fog_slider.getValue()/500.0);
-                parent.seeLabels();
+                // (as much as the former 41 layers of white at this opacity)
+                parent.set_fog(1-Math.pow(1-fog_slider.getValue()/500.0, 41));
             }
         }); 
     }//GEN-LAST:event_fog_sliderStateChanged
@@ -2846,15 +2669,15 @@ public class Controls extends javax.swing.JFrame {
     private void z4jsStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_z4jsStateChanged
         if ((int)z4js.getValue()<1)
             z4js.setValue(1);
-        if ((int)z4js.getValue()>dataset.size())
-            z4js.setValue(dataset.size());
+        if ((int)z4js.getValue()>data.size())
+            z4js.setValue(data.size());
     }//GEN-LAST:event_z4jsStateChanged
 
     /**
      * Change all label sizes except per point (z4), within Juniper class. 
      */
     private void lsizeStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_lsizeStateChanged
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post("label_size", new Runnable() {
             @Override
             public void run() {
                 try{
@@ -2867,10 +2690,11 @@ public class Controls extends javax.swing.JFrame {
                     parent.ylabel_b.setScaleX(new_size); parent.ylabel_b.setScaleY(new_size);
                     parent.zlabel_b.setScaleX(new_size); parent.zlabel_b.setScaleY(new_size);
                     
+                    parent.label_overlay.set_scale(LabelOverlay.TICKS, new_size);
                     for (int ax=0; ax<3; ax++){
                         // Including all tick-related labels, tick-by-tick
                         for (Node n: parent.ticsGroups[ax].getChildren()){
-                            Text3DMesh tm = (Text3DMesh) ((Group) n).getChildren().get(0);
+                            Node tm = ((Group) n).getChildren().get(0);
                             Rectangle re = (Rectangle) ((Group) n).getChildren().get(1);
                             tm.setScaleX(0.8*new_size); tm.setScaleY(0.8*new_size); 
                             re.setScaleX(new_size); re.setScaleY(new_size); 
@@ -2885,13 +2709,14 @@ public class Controls extends javax.swing.JFrame {
      * Change all z4 label sizes, within Juniper class. 
      */
     private void z4cb3StateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_z4cb3StateChanged
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post("point_label_size", new Runnable() {
             @Override
             public void run() {
                 try{
                     double new_size = (int)z4cb3.getValue()/12.0;                    
+                    parent.label_overlay.set_scale(LabelOverlay.POINTS, new_size);
                     for (Node n: parent.point_labels.getChildren()){
-                        Text3DMesh tm = (Text3DMesh) ((Group) n).getChildren().get(0);
+                        Node tm = ((Group) n).getChildren().get(0);
                         Rectangle re = (Rectangle) ((Group) n).getChildren().get(1);
                         tm.setScaleX(0.8*new_size); tm.setScaleY(0.8*new_size); 
                         re.setScaleX(new_size); re.setScaleY(new_size); 
@@ -2993,7 +2818,7 @@ public class Controls extends javax.swing.JFrame {
         }
         
         // Invoke seeLabels() to refresh the plot
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post(RenderQueue.REFRESH, new Runnable() {
             @Override
             public void run() {
                 try{                    
@@ -3011,9 +2836,10 @@ public class Controls extends javax.swing.JFrame {
         
         // Logic to decide what is visible or not according to shadow type and check boxes
         boolean projections = (shadow_type.getSelectedIndex()==0)||(shadow_type.getSelectedIndex()>=2);
-        boolean paths =       (shadow_type.getSelectedIndex()==1)||(shadow_type.getSelectedIndex()>=2);
+        boolean paths =       (shadow_type.getSelectedIndex()>=1)&&(shadow_type.getSelectedIndex()<=4);
         boolean xor =         (shadow_type.getSelectedIndex()==3);
         boolean preselect =         (shadow_type.getSelectedIndex()==4);
+        boolean density =     (shadow_type.getSelectedIndex()==5);
         
         boolean selected_x = shadowx1.isSelected();
         parent.point_shadows[2].setVisible(selected_x && paths);
@@ -3038,10 +2864,11 @@ public class Controls extends javax.swing.JFrame {
                                            shadow_opacity.setEnabled(false);
         }
         // Invoke seeLabels() to refresh the plot
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post(RenderQueue.REFRESH, new Runnable() {
             @Override
             public void run() {
                 try{                    
+                    parent.set_projection_density(density);
                     parent.seeLabels();
                 }  catch (Exception e){
                 }
@@ -3087,8 +2914,8 @@ public class Controls extends javax.swing.JFrame {
      * @param plabel the corresponding (FXyz) axis label within the Juniper class
      * @param change_text a boolean denoting if this call is to update the text
      */
-    private void label_update(javax.swing.JTextField label, Text3DMesh plabel, boolean change_text){
-        Platform.runLater(new Runnable() {
+    private void label_update(javax.swing.JTextField label, GlyphText plabel, boolean change_text){
+        parent.render_queue.post(Arrays.asList("label", label, change_text), new Runnable() {
             @Override
             public void run() {
                 try{                  
@@ -3139,7 +2966,7 @@ public class Controls extends javax.swing.JFrame {
      * @param ax axis (0 to 2 internally)
      */
     private void tic_update(int ax){
-        Platform.runLater(new Runnable() {
+        parent.render_queue.post("tics"+ax, new Runnable() {
             @Override
             public void run() {
                 try{                    
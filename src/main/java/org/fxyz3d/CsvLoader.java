@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parser for delimiter-separated dataset files (and clipped text). Files are memory-mapped
+ * and split into line-aligned chunks, which are parsed in parallel on a fork-join pool.
+ * Every chunk builds its own string dictionaries, and these are merged in chunk order,
+ * so that the string identifiers are the same as when parsing the file line by line.
+ * The results for a file are also cached in a binary sidecar file (see DatasetCache).
+ *
+ * @author Philippos Papaphilippou
+ */
+public class CsvLoader {
+
+    static final int MIN_CHUNK = 1<<20;   // bytes
+    static final int MAX_CHUNK = 1<<26;   // (also keeps each mapping well below 2GB)
+
+    final int separator_option;
+    final String separator;
+    final boolean space_or_tab;
+    final boolean names_from_line;
+
+    // Results, in the same form as kept by the Controls class
+    String[] variableNames;
+    ArrayList<Map<String, Integer>> stringtypes = new ArrayList<Map<String, Integer>>();
+    DataTable data = new DataTable();
+
+    /**
+     * @param separator_option index of the separator combo box in the control window
+     * @param names_from_line use the first line as the variable names
+     */
+    public CsvLoader(int separator_option, boolean names_from_line){
+        this.separator_option = separator_option;
+        switch (separator_option){
+            case 1:  separator = "\t"; break;
+            case 2:  separator = ",";  break;
+            case 3:  separator = ";";  break;
+            default: separator = " ";  break; // (also for [Space|Tab])
+        }
+        this.space_or_tab = separator_option==4;
+        this.names_from_line = names_from_line;
+    }
+
+    /**
+     * Load a file from its cache, if it is up to date, or parse it and update the cache.
+     */
+    public CsvLoader load(File f) throws IOException {
+        if (DatasetCache.read(f, this))
+            return this;
+        parse(f);
+        DatasetCache.write(f, this);
+        return this;
+    }
+
+    /**
+     * Parse a file, in parallel chunks of the memory-mapped contents.
+     */
+    public CsvLoader parse(File f) throws IOException {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+
+            // The first (non-blank) line decides the columns, so it is handled up front
+            long start = 0;
+            String first = null;
+            while (start<size && first==null){
+                long end = line_end(ch, start, size);
+                String line = strip(decode(ch, start, end));
+                start = end;
+                if (line.trim().length()!=0)
+                    first = line;
+            }
+            if (first==null)
+                throw new IOException("No data in "+f);
+            long data_start = header(first)? start : 0;
+
+            // Line-aligned chunks, a few per worker thread
+            int parallelism = ForkJoinPool.commonPool().getParallelism();
+            long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, (size-data_start)/(4L*parallelism)+1));
+            List<long[]> bounds = new ArrayList<long[]>();
+            for (long s=data_start; s<size; ){
+                long e = s+target>=size? size : line_end(ch, s+target, size);
+                bounds.add(new long[]{s, e});
+                s = e;
+            }
+
+            List<ForkJoinTask<Chunk>> tasks = new ArrayList<ForkJoinTask<Chunk>>();
+            for (long[] b: bounds){
+                tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                    String text = decode(ch, b[0], b[1]);
+                    return parse_chunk(text, 0, text.length());
+                }));
+            }
+            List<Chunk> chunks = new ArrayList<Chunk>();
+            for (ForkJoinTask<Chunk> t: tasks)
+                chunks.add(t.join());
+            merge(chunks);
+        }
+        return this;
+    }
+
+    /**
+     * Parse text contents (e.g. from the clipboard).
+     */
+    public CsvLoader parse(String text){
+        int start = 0;
+        String first = null;
+        while (start<text.length() && first==null){
+            int end = text.indexOf('\n', start);
+            end = end<0? text.length() : end+1;
+            String line = strip(text.substring(start, end));
+            start = end;
+            if (line.trim().length()!=0)
+                first = line;
+        }
+        if (first==null){
+            variableNames = new String[0];
+            return this;
+        }
+        int data_start = header(first)? start : 0;
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        chunks.add(parse_chunk(text, data_start, text.length()));
+        merge(chunks);
+        return this;
+    }
+
+    /**
+     * Prepares the variable names and dictionaries from the first line.
+     *
+     * @return true if the line is a header (not data)
+     */
+    private boolean header(String line){
+        String[] components = split(line);
+        if (names_from_line) {
+            variableNames = components;
+        } else {
+            String[] names = new String[components.length];
+            for (int i=0; i<components.length; i++){
+                names[i] = "Parameter " + i;
+            }
+            variableNames = names;
+        }
+        for (int i = 0; i < components.length; i++) {
+            stringtypes.add(new LinkedHashMap<String, Integer>());
+        }
+        return names_from_line;
+    }
+
+    /**
+     * Columns of a chunk, with string identifiers that are local to the chunk.
+     */
+    private static class Chunk {
+        int rows = 0;
+        int capacity = 1024;
+        double[][] values;
+        int[][] codes;            // (allocated when the first string of a column appears)
+        boolean[] numbers;        // if a column has any numerical cell
+        List<Map<String, Integer>> dictionaries = new ArrayList<Map<String, Integer>>();
+
+        Chunk(int columns){
+            values = new double[columns][capacity];
+            codes = new int[columns][];
+            numbers = new boolean[columns];
+            for (int i=0; i<columns; i++)
+                dictionaries.add(new LinkedHashMap<String, Integer>());
+        }
+
+        void grow(){
+            capacity *= 2;
+            for (int i=0; i<values.length; i++){
+                values[i] = Arrays.copyOf(values[i], capacity);
+                if (codes[i]!=null)
+                    codes[i] = Arrays.copyOf(codes[i], capacity);
+            }
+        }
+    }
+
+    private Chunk parse_chunk(String text, int from, int to){
+        int columns = variableNames.length;
+        Chunk c = new Chunk(columns);
+
+        for (int start=from; start<to; ){
+            int end = text.indexOf('\n', start);
+            end = (end<0 || end>=to)? to : end+1;
+            String line = strip(text.substring(start, end));
+            start = end;
+            if (line.trim().length() == 0)
+                continue;
+
+            if (c.rows==c.capacity)
+                c.grow();
+            int row = c.rows++;
+            String[] components = split(line);
+            for (int i = 0; i < columns; i++) {
+                double[] values = c.values[i];
+                if (c.codes[i]!=null)
+                    c.codes[i][row] = -1;
+                if (i>=components.length){
+                    values[row] = Double.NaN; // (shorter line)
+                    continue;
+                }
+                String in = components[i].replace(",", "");
+                if (in.length()==0){
+                    values[row] = Double.NaN;
+                    continue;
+                }
+                if (numeric(in)){
+                    try {
+                        values[row] = Double.parseDouble(in); // Parse the values as doubles
+                        c.numbers[i] = true;
+                        continue;
+                    } catch (NumberFormatException e) {
+                        // (only for strings that start like a number, e.g. "4x4")
+                    }
+                }
+                // Use the string appearance number as value instead (local to the chunk for now)
+                Map<String, Integer> d = c.dictionaries.get(i);
+                Integer id = d.get(in);
+                if (id==null){
+                    id = d.size();
+                    d.put(in, id);
+                }
+                if (c.codes[i]==null){
+                    c.codes[i] = new int[c.capacity];
+                    Arrays.fill(c.codes[i], 0, row, -1);
+                }
+                c.codes[i][row] = id;
+                values[row] = Double.NaN;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Merges the chunk dictionaries in order (first occurrence gets the next identifier),
+     * and concatenates the chunk columns with the renumbered string identifiers.
+     */
+    private void merge(List<Chunk> chunks){
+        int columns = variableNames.length;
+        int total = 0;
+        for (Chunk c: chunks)
+            total += c.rows;
+
+        DataTable.Column[] cols = new DataTable.Column[columns];
+        for (int i=0; i<columns; i++){
+            boolean strings = false, numbers = false;
+            for (Chunk c: chunks){
+                strings |= c.codes[i]!=null;
+                numbers |= c.numbers[i];
+            }
+            double[] values = numbers? new double[total] : null;
+            int[] codes = strings? new int[total] : null;
+
+            Map<String, Integer> global = stringtypes.get(i);
+            int offset = 0;
+            for (Chunk c: chunks){
+                if (values!=null)
+                    System.arraycopy(c.values[i], 0, values, offset, c.rows);
+                if (codes!=null){
+                    if (c.codes[i]==null){
+                        Arrays.fill(codes, offset, offset+c.rows, -1);
+                    } else {
+                        int[] remap = new int[c.dictionaries.get(i).size()];
+                        for (Map.Entry<String, Integer> e: c.dictionaries.get(i).entrySet()){
+                            Integer id = global.get(e.getKey());
+                            if (id==null){
+                                id = global.size();
+                                global.put(e.getKey(), id);
+                            }
+                            remap[e.getValue()] = id;
+                        }
+                        for (int r=0; r<c.rows; r++){
+                            int code = c.codes[i][r];
+                            codes[offset+r] = code<0? -1 : remap[code];
+                        }
+                    }
+                }
+                offset += c.rows;
+            }
+            cols[i] = new DataTable.Column(values, codes, global.keySet().toArray(new String[0]));
+        }
+        data = new DataTable(variableNames, cols, total);
+    }
+
+    private String[] split(String line){
+        if (space_or_tab)
+            return line.replace("\t", separator).split(separator);
+        return line.split(separator);
+    }
+
+    /**
+     * Cheap test to avoid using exceptions as the string detector. It only rejects
+     * tokens that Double.parseDouble() would certainly reject.
+     */
+    static boolean numeric(String in){
+        int k = 0;
+        while (k<in.length() && in.charAt(k)<=' ')
+            k++;
+        if (k<in.length() && (in.charAt(k)=='+' || in.charAt(k)=='-'))
+            k++;
+        if (k>=in.length())
+            return false;
+        char c = in.charAt(k);
+        return (c>='0' && c<='9') || c=='.' || c=='N' || c=='I';
+    }
+
+    private static String strip(String line){
+        int end = line.length();
+        while (end>0 && (line.charAt(end-1)=='\n' || line.charAt(end-1)=='\r'))
+            end--;
+        return line.substring(0, end);
+    }
+
+    /**
+     * @return the position after the next line feed from the given position (or the file size)
+     */
+    private static long line_end(FileChannel ch, long from, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1<<16);
+        for (long pos=from; pos<size; ){
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n<=0)
+                break;
+            for (int i=0; i<n; i++)
+                if (buf.get(i)=='\n')
+                    return pos+i+1;
+            pos += n;
+        }
+        return size;
+    }
+
+    private static String decode(FileChannel ch, long start, long end) throws IOException {
+        if (end<=start)
+            return "";
+        MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_ONLY, start, end-start);
+        return StandardCharsets.UTF_8.decode(mb).toString();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+/**
+ * Column-oriented (struct-of-arrays) storage of a parsed dataset. Numerical cells are
+ * kept in a primitive array per column, and non-numerical cells are dictionary-encoded
+ * as string identifiers (the same identifiers as in the stringtypes maps). The text of
+ * a cell is only materialised on demand, e.g. for the point labels and the data viewer.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class DataTable {
+
+    /**
+     * A single column. Purely numerical columns have no codes, and purely
+     * non-numerical columns have no values.
+     */
+    public static class Column {
+        final double[] values;     // numerical value per row (or null)
+        final int[] codes;         // string identifier per row, -1 for numerical/empty cells (or null)
+        final String[] dictionary; // string per identifier
+
+        Column(double[] values, int[] codes, String[] dictionary){
+            this.values = values;
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * @return the value used for plotting (string identifier for strings, NaN for empty cells)
+         */
+        public double get(int row){
+            if (codes!=null && codes[row]>=0)
+                return codes[row];
+            return values==null? Double.NaN : values[row];
+        }
+
+        /**
+         * @return the cell as text
+         */
+        public String text(int row){
+            if (codes!=null && codes[row]>=0)
+                return dictionary[codes[row]];
+            double v = values==null? Double.NaN : values[row];
+            if (Double.isNaN(v))
+                return "";
+            if (v==Math.rint(v) && Math.abs(v)<1e15)
+                return Long.toString((long) v);
+            return Double.toString(v);
+        }
+    }
+
+    final String[] names;
+    final Column[] columns;
+    final int rows;
+
+    public DataTable(String[] names, Column[] columns, int rows){
+        this.names = names;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * An empty table (before any dataset is loaded).
+     */
+    public DataTable(){
+        this(new String[0], new Column[0], 0);
+    }
+
+    /**
+     * @return number of rows (data points)
+     */
+    public int size(){
+        return rows;
+    }
+
+    /**
+     * @return number of columns (variables)
+     */
+    public int width(){
+        return columns.length;
+    }
+
+    public double get(int row, int col){
+        return columns[col].get(row);
+    }
+
+    public String text(int row, int col){
+        return columns[col].text(row);
+    }
+
+    /**
+     * @return the values of a whole column (a new array)
+     */
+    public double[] column(int col){
+        Column c = columns[col];
+        double[] t = new double[rows];
+        if (c.codes==null && c.values!=null)
+            System.arraycopy(c.values, 0, t, 0, rows);
+        else
+            for (int i=0; i<rows; i++)
+                t[i] = c.get(i);
+        return t;
+    }
+}
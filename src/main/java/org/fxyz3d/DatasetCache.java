@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary columnar cache of a parsed dataset, kept as a sidecar file next to the source
+ * (with the extra extension ".jnpc"). It holds the variable names, the typed columns
+ * and their string dictionaries, so that a dataset that has been opened before is
+ * loaded by memory-mapping the cache instead of parsing the text again.
+ * The cache is only used if its fingerprint (size, modification time and a checksum of
+ * a few sampled blocks of the source) and parsing options match, otherwise it is rewritten.
+ *
+ * Layout (big-endian): magic, version, fingerprint, options, rows, columns, and then per
+ * column its name, flags, dictionary, values (doubles) and codes (ints), if present.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class DatasetCache {
+
+    public static final String EXTENSION = ".jnpc";
+    static final int MAGIC = 0x4A4E5043; // "JNPC"
+    static final int VERSION = 1;
+    static final int SAMPLE = 1<<16;     // bytes per sampled block of the source
+
+    private static final byte HAS_VALUES = 1, HAS_CODES = 2;
+    private static volatile boolean write_failed = false; // (reported once per session)
+
+    /**
+     * @return the sidecar cache file of a dataset file
+     */
+    public static File sidecar(File source){
+        return new File(source.getPath()+EXTENSION);
+    }
+
+    /**
+     * Fills the results of a loader from the cache of a file, if there is a valid one.
+     *
+     * @return true if the cache was used
+     */
+    static boolean read(File source, CsvLoader loader){
+        File cache = sidecar(source);
+        if (!cache.isFile())
+            return false;
+        try (FileChannel ch = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            if (ch.size()>Integer.MAX_VALUE)
+                return false;
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (b.getInt()!=MAGIC || b.getInt()!=VERSION)
+                return false;
+            long[] fp = fingerprint(source);
+            if (b.getLong()!=fp[0] || b.getLong()!=fp[1] || b.getLong()!=fp[2])
+                return false;
+            if (b.getInt()!=loader.separator_option || (b.get()!=0)!=loader.names_from_line)
+                return false;
+
+            int rows = b.getInt();
+            int columns = b.getInt();
+            String[] names = new String[columns];
+            DataTable.Column[] cols = new DataTable.Column[columns];
+            loader.stringtypes.clear();
+            for (int i=0; i<columns; i++){
+                names[i] = string(b);
+                byte flags = b.get();
+                String[] dictionary = new String[b.getInt()];
+                Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+                for (int k=0; k<dictionary.length; k++){
+                    dictionary[k] = string(b);
+                    ids.put(dictionary[k], k);
+                }
+                double[] values = null;
+                int[] codes = null;
+                if ((flags&HAS_VALUES)!=0){
+                    values = new double[rows];
+                    b.asDoubleBuffer().get(values);
+                    b.position(b.position()+rows*8);
+                }
+                if ((flags&HAS_CODES)!=0){
+                    codes = new int[rows];
+                    b.asIntBuffer().get(codes);
+                    b.position(b.position()+rows*4);
+                }
+                cols[i] = new DataTable.Column(values, codes, dictionary);
+                loader.stringtypes.add(ids);
+            }
+            loader.variableNames = names;
+            loader.data = new DataTable(names, cols, rows);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // (unreadable or truncated cache, so the source is parsed instead)
+            loader.stringtypes.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the results of a loader as the cache of a file. Failures (e.g. in
+     * read-only directories) only mean that the next load parses the file again,
+     * so only the first one is reported.
+     */
+    static void write(File source, CsvLoader loader){
+        File cache = sidecar(source);
+        File tmp = new File(cache.getPath()+".tmp");
+        try {
+            long[] fp = fingerprint(source);
+            DataTable data = loader.data;
+            int rows = data.size();
+
+            // Names and dictionaries are encoded first, to know the total size
+            byte[][] names = new byte[data.width()][];
+            byte[][][] dictionaries = new byte[data.width()][][];
+            long size = 4+4+3*8+4+1+4+4;
+            for (int i=0; i<data.width(); i++){
+                DataTable.Column c = data.columns[i];
+                names[i] = data.names[i].getBytes(StandardCharsets.UTF_8);
+                dictionaries[i] = new byte[c.dictionary.length][];
+                size += 4+names[i].length+1+4;
+                for (int k=0; k<c.dictionary.length; k++){
+                    dictionaries[i][k] = c.dictionary[k].getBytes(StandardCharsets.UTF_8);
+                    size += 4+dictionaries[i][k].length;
+                }
+                if (c.values!=null)
+                    size += rows*8L;
+                if (c.codes!=null)
+                    size += rows*4L;
+            }
+            if (size>Integer.MAX_VALUE)
+                return;
+
+            try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                b.putInt(MAGIC).putInt(VERSION);
+                b.putLong(fp[0]).putLong(fp[1]).putLong(fp[2]);
+                b.putInt(loader.separator_option).put((byte) (loader.names_from_line? 1:0));
+                b.putInt(rows).putInt(data.width());
+                for (int i=0; i<data.width(); i++){
+                    DataTable.Column c = data.columns[i];
+                    b.putInt(names[i].length).put(names[i]);
+                    b.put((byte) ((c.values!=null? HAS_VALUES:0) | (c.codes!=null? HAS_CODES:0)));
+                    b.putInt(dictionaries[i].length);
+                    for (byte[] s: dictionaries[i])
+                        b.putInt(s.length).put(s);
+                    if (c.values!=null){
+                        b.asDoubleBuffer().put(c.values, 0, rows);
+                        b.position(b.position()+rows*8);
+                    }
+                    if (c.codes!=null){
+                        b.asIntBuffer().put(c.codes, 0, rows);
+                        b.position(b.position()+rows*4);
+                    }
+                }
+                b.force();
+            }
+            Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            if (!write_failed){
+                write_failed = true;
+                System.err.println("Could not write the dataset cache "+cache+" (not reported again): "+e.getMessage());
+            }
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @return size, modification time and a checksum of the first, middle and last
+     * blocks of a file (a full checksum would cost almost as much as parsing)
+     */
+    static long[] fingerprint(File f) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer buf = ByteBuffer.allocate(SAMPLE);
+            for (long pos: new long[]{0, Math.max(0, size/2-SAMPLE/2), Math.max(0, size-SAMPLE)}){
+                buf.clear();
+                while (buf.hasRemaining() && ch.read(buf, pos+buf.position())>0){}
+                buf.flip();
+                crc.update(buf);
+            }
+            return new long[]{size, f.lastModified(), crc.getValue()};
+        }
+    }
+
+    private static String string(ByteBuffer b){
+        byte[] s = new byte[b.getInt()];
+        b.get(s);
+        return new String(s, StandardCharsets.UTF_8);
+    }
+}
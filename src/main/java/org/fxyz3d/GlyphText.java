@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import org.fxyz3d.shapes.primitives.TexturedMesh;
+import org.fxyz3d.shapes.primitives.Text3DMesh;
+
+/**
+ * Flat 3D text assembled from cached glyph meshes, as a drop-in for the (flat) Text3DMesh
+ * labels. A Text3DMesh triangulates every letter of its text whenever it is created or
+ * changed, while here every character is triangulated once per font and size and then
+ * shared (as the mesh of a MeshView) by all the labels that contain it.
+ * The glyphs are kept in a bounded LRU cache, which can be warmed in the background.
+ * Since the glyph meshes and the materials are shared with the shown labels, labels
+ * are only created on the JavaFX thread (see prepare() for the work in the background).
+ *
+ * @author Philippos Papaphilippou
+ */
+public class GlyphText extends Group {
+
+    public static final int CACHE_SIZE = 1024;  // max cached glyphs
+    public static final String COMMON = "0123456789.-+E%abcdefghijklmnopqrstuvwxyzABCDFGHIJKLMNOPQRSTUVWXYZ";
+
+    /**
+     * A triangulated character (mesh is null for characters without an outline).
+     */
+    static class Glyph {
+        final TriangleMesh mesh;
+        final CullFace cull;
+        final double advance;
+
+        Glyph(TriangleMesh mesh, CullFace cull, double advance){
+            this.mesh = mesh;
+            this.cull = cull;
+            this.advance = advance;
+        }
+    }
+
+    private static final Map<String, Glyph> glyphs = new LinkedHashMap<String, Glyph>(CACHE_SIZE, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Glyph> eldest){
+            return size()>CACHE_SIZE;
+        }
+    };
+    private static final Map<Color, PhongMaterial> materials = new ConcurrentHashMap<Color, PhongMaterial>();
+
+    private final String font;
+    private final int size;
+    private String text;
+    private PhongMaterial material;
+
+    /**
+     * @param text the text
+     * @param font font family (as in Text3DMesh)
+     * @param size font size
+     */
+    public GlyphText(String text, String font, int size){
+        this.font = font;
+        this.size = size;
+        material = material(Color.BLACK);
+        setText3D(text);
+    }
+
+    public String getText3D(){
+        return text;
+    }
+
+    /**
+     * Changes the text, by reusing the cached glyphs.
+     */
+    public final void setText3D(String text){
+        this.text = text;
+        getChildren().clear();
+        double x = 0;
+        for (int k=0; k<text.length(); k++){
+            Glyph g = glyph(font, size, text.charAt(k));
+            if (g.mesh!=null){
+                MeshView mv = new MeshView(g.mesh);
+                mv.setCullFace(g.cull);
+                mv.setMaterial(material);
+                mv.setTranslateX(x);
+                getChildren().add(mv);
+            }
+            x += g.advance;
+        }
+    }
+
+    /**
+     * Plain colour (as the Text3DMesh texture mode of the same name).
+     */
+    public void setTextureModeNone(Color colour){
+        material = material(colour);
+        for (Node n: getChildren())
+            ((MeshView) n).setMaterial(material);
+    }
+
+    /**
+     * @return the colour set by setTextureModeNone()
+     */
+    public Color getTextureColour(){
+        return material.getDiffuseColor();
+    }
+
+    private static PhongMaterial material(Color colour){
+        return materials.computeIfAbsent(colour, c -> new PhongMaterial(c));
+    }
+
+    /**
+     * @return the cached glyph of a character, triangulating it on a miss
+     */
+    static Glyph glyph(String font, int size, char c){
+        String key = font+"|"+size+"|"+c;
+        Glyph g;
+        synchronized (glyphs){
+            g = glyphs.get(key);
+        }
+        if (g!=null)
+            return g;
+
+        // (outside the lock, as triangulation is slow, at the cost of rare duplicate work)
+        Text t = new Text(String.valueOf(c));
+        t.setFont(Font.font(font, size));
+        double advance = t.getLayoutBounds().getWidth();
+        TriangleMesh mesh = null;
+        CullFace cull = CullFace.BACK;
+        if (!Character.isWhitespace(c)){
+            try {
+                Text3DMesh letter = new Text3DMesh(String.valueOf(c), font, size, true, 0, 0, 1);
+                if (!letter.getMeshes().isEmpty()){
+                    TexturedMesh m = letter.getMeshes().get(0);
+                    mesh = (TriangleMesh) m.getMesh();
+                    cull = m.getCullFace();
+                }
+            } catch (RuntimeException e) {
+                // (glyphs that fail to triangulate are left blank)
+            }
+        }
+        g = new Glyph(mesh, cull, advance);
+        synchronized (glyphs){
+            Glyph prev = glyphs.putIfAbsent(key, g);
+            return prev!=null? prev : g;
+        }
+    }
+
+    /**
+     * Triangulates the characters of a text that are not cached yet (e.g. on a worker
+     * thread, so that creating the label later on the JavaFX thread only assembles it).
+     */
+    public static void prepare(String text, String font, int size){
+        for (int k=0; k<text.length(); k++)
+            glyph(font, size, text.charAt(k));
+    }
+
+    /**
+     * Triangulates the common characters of a font and size in the background.
+     */
+    public static void warm(String font, int size){
+        Thread t = new Thread(() -> {
+            for (int k=0; k<COMMON.length(); k++)
+                glyph(font, size, COMMON.charAt(k));
+        }, "Glyph cache");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+}
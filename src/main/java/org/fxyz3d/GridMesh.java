@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.Arrays;
+import java.util.List;
+import javafx.geometry.Point3D;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * The grid lines, grid surfaces or tick marks of a group as a single mesh, instead of
+ * a Cylinder or Rectangle per tick. Lines and marks are thin square beams, and the
+ * surfaces are parallel squares, which are drawn from the furthest to the nearest
+ * for the transparency (see sort()). It is rebuilt whenever the ticks change.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class GridMesh extends MeshView {
+
+    private final int axis;           // normal of the surfaces (-1 for beams)
+    private final float[] positions;  // position of every surface along the normal
+    private final int[] faces;
+    private int[] order;              // surface indexes, from the furthest
+    private long[] keys;
+
+    private GridMesh(float[] points, int count, int axis, float[] positions, PhongMaterial material){
+        this.axis = axis;
+        this.positions = positions;
+        faces = new int[count*2*6];
+        order = new int[count];
+        keys = axis<0? null : new long[count];
+        for (int k=0; k<count; k++)
+            order[k] = k;
+        int per = axis<0? 4 : 1;   // (quads per beam or surface)
+        write_faces(per);
+
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getPoints().setAll(points);
+        mesh.getTexCoords().setAll(0, 0);
+        mesh.getFaces().setAll(faces);
+        setMesh(mesh);
+        setCullFace(CullFace.NONE);
+        setMaterial(material);
+    }
+
+    /**
+     * Beams (square prisms, as cylinders with four sides).
+     *
+     * @param beams start and end points (x0, y0, z0, x1, y1, z1) per beam
+     * @param radius distance of the edges from the centre line
+     */
+    public static GridMesh beams(List<double[]> beams, double radius, PhongMaterial material){
+        float[] points = new float[beams.size()*8*3];
+        int v = 0;
+        for (double[] b: beams){
+            Point3D d = new Point3D(b[3]-b[0], b[4]-b[1], b[5]-b[2]).normalize();
+            Point3D u = d.crossProduct(Math.abs(d.getX())<0.9? 1:0, Math.abs(d.getX())<0.9? 0:1, 0).normalize();
+            Point3D w = d.crossProduct(u);
+            for (int end=0; end<2; end++){
+                for (int k=0; k<4; k++){
+                    double a = Math.PI/4+k*Math.PI/2;
+                    double cu = Math.cos(a)*radius, cw = Math.sin(a)*radius;
+                    points[v++] = (float) (b[end*3]+u.getX()*cu+w.getX()*cw);
+                    points[v++] = (float) (b[end*3+1]+u.getY()*cu+w.getY()*cw);
+                    points[v++] = (float) (b[end*3+2]+u.getZ()*cu+w.getZ()*cw);
+                }
+            }
+        }
+        return new GridMesh(points, beams.size()*4, -1, null, material);
+    }
+
+    /**
+     * Squares from 0 to the length, perpendicular to an axis.
+     *
+     * @param axis the normal (0 for x, 1 for y, 2 for z)
+     * @param positions the position of every square along the normal
+     */
+    public static GridMesh surfaces(int axis, double[] positions, double length, PhongMaterial material){
+        int e1 = (axis+1)%3, e2 = (axis+2)%3;
+        float[] points = new float[positions.length*4*3];
+        float[] at = new float[positions.length];
+        double[] p = new double[3];
+        int v = 0;
+        for (int s=0; s<positions.length; s++){
+            at[s] = (float) positions[s];
+            for (int k=0; k<4; k++){
+                p[axis] = positions[s];
+                p[e1] = (k==1 || k==2)? length : 0;
+                p[e2] = k>=2? length : 0;
+                for (int d=0; d<3; d++)
+                    points[v++] = (float) p[d];
+            }
+        }
+        return new GridMesh(points, positions.length, axis, at, material);
+    }
+
+    private void write_faces(int per){
+        int f = 0;
+        for (int k=0; k<order.length; k++){
+            if (per==1){
+                int v = order[k]*4;
+                f = quad(f, v, v+1, v+2, v+3);
+            } else {
+                // (the sides of a beam, between the corners of its two ends)
+                int v = (k/4)*8, c = k%4, n = (c+1)%4;
+                f = quad(f, v+c, v+n, v+4+n, v+4+c);
+            }
+        }
+    }
+
+    private int quad(int f, int a, int b, int c, int d){
+        faces[f++] = a; faces[f++] = 0; faces[f++] = b; faces[f++] = 0; faces[f++] = c; faces[f++] = 0;
+        faces[f++] = a; faces[f++] = 0; faces[f++] = c; faces[f++] = 0; faces[f++] = d; faces[f++] = 0;
+        return f;
+    }
+
+    /**
+     * Orders the surfaces from the furthest to the nearest to the camera (beams are
+     * left as they are).
+     *
+     * @param eye the camera position in scene coordinates
+     * @return true if the order has changed
+     */
+    public boolean sort(Point3D eye){
+        if (axis<0 || order.length<2)
+            return false;
+        Point3D e = sceneToLocal(eye);
+        double ea = axis==0? e.getX() : axis==1? e.getY() : e.getZ();
+
+        // (non-negative floats sort as their bits, with the surface index in the low half)
+        boolean sorted = true;
+        float last = Float.MAX_VALUE;
+        for (int k=0; k<order.length; k++){
+            int i = order[k];
+            float d = (float) Math.abs(positions[i]-ea);
+            sorted &= d<=last;
+            last = d;
+            keys[k] = ((long) Float.floatToIntBits(d)<<32) | i;
+        }
+        if (sorted)
+            return false;
+        Arrays.sort(keys);
+        for (int k=0; k<order.length; k++)
+            order[order.length-1-k] = (int) keys[k];
+        write_faces(1);
+        ((TriangleMesh) getMesh()).getFaces().setAll(faces);
+        return true;
+    }
+}
@@ -16,11 +16,18 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.Scene;
 import javafx.scene.*;
@@ -30,19 +37,21 @@ import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.*;
 
 import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point3D;
 import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
 import javafx.scene.text.Text;
+import javafx.scene.transform.NonInvertibleTransformException;
 import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Translate;
 import javafx.util.Pair;
 import javax.imageio.ImageIO;
 
 import org.fxyz3d.importers.maya.Xform;
-import org.fxyz3d.shapes.primitives.Text3DMesh;
 
 /** 
  * This class provides the main window, where the stage displays the generated 3D scatterplot
@@ -64,11 +73,52 @@ public class Juniper extends Application {
     final Xform[] gridSurfGroups = {new Xform(), new Xform(), new Xform()};
     final Xform plotw = new Xform();
     
-    final Xform points = new Xform();
+    Xform points = new Xform(); // (replaced by every plot)
     final Xform point_labels = new Xform();
     final Xform[] point_shadows = {new Xform(), new Xform(), new Xform(), new Xform(), new Xform()};
     final Xform[] point_shadow_projections = {new Xform(), new Xform(), new Xform(), new Xform(), new Xform()};
-    final Xform fog = new Xform();
+    
+    // 2D labels above the 3D view (instead of GlyphText labels, if overlay_labels)
+    SubScene view;
+    final LabelOverlay label_overlay = new LabelOverlay();
+    boolean overlay_labels = true;
+    // Software rendered points below the 3D view (for the SPLAT point type)
+    final SplatRenderer splats = new SplatRenderer();
+    // Greedy placement of the 3D point labels (by priority) within a budget
+    final LabelDeclutter label_declutter = new LabelDeclutter(LabelOverlay.BUDGET);
+    static final int[] LABEL_BUDGETS = {50, 100, 250, 500, 1000, Integer.MAX_VALUE};
+    
+    // Render requests from the control window
+    final RenderQueue render_queue = new RenderQueue();
+    
+    // Background construction of the plots (a single thread, as the nodes of a build are not thread-safe)
+    private final ExecutorService plot_builder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Plot builder");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong plot_generation = new AtomicLong();
+    
+    // Plotted point attributes for the (lazily built) shadows and projections
+    double[][] shadow_array;
+    double[] shadow_sizes;
+    int[] shadow_colours, shadow_alphas; // (palette entries and transparency levels, see Colormap)
+    int shadow_count = 0;
+    int shadow_pointtype = 0;
+    boolean shadow_z3 = false;
+    final boolean[] shadows_built = new boolean[5];
+    final boolean[] projections_built = new boolean[5];
+    
+    // Projections as one raster per plane (xz, yz, xy), rasterised in the background
+    boolean projection_density = false;
+    private final PhongMaterial[] projection_materials = {new PhongMaterial(), new PhongMaterial(), new PhongMaterial()};
+    private final boolean[] rasters_pending = new boolean[3];
+    private long projection_generation = 0;
+    private final ExecutorService projection_rasteriser = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Projection rasteriser");
+        t.setDaemon(true);
+        return t;
+    });
 
     // Camera initialisation
     final PerspectiveCamera camera = new PerspectiveCamera(true);
@@ -93,9 +143,10 @@ public class Juniper extends Application {
     double mousePosX, mousePosY, mouseOldX, mouseOldY, mouseDeltaX, mouseDeltaY;   
     
     double pointsize = 5;
-    boolean draw = false;
+    volatile boolean draw = false;
     boolean screenshot = false;
     int pointtype = 1;
+    static final int SPLAT = 5; // (point type of the software splats, see SplatRenderer)
     int dimensions = 7;
     boolean depth_colormap = false;
     
@@ -109,21 +160,98 @@ public class Juniper extends Application {
     double grid_opacity=0.33;
     double shadow_opacity=0.33;
     
-    Text3DMesh xlabel, ylabel, zlabel;
+    GlyphText xlabel, ylabel, zlabel;
     Rectangle xlabel_b, ylabel_b, zlabel_b;
     
     Rotate label_heading=new Rotate(), label_roll=new Rotate();
     
     Cylinder zm, zm2, zm3, xm, ym;
-    PhongMaterial redMaterial, greenMaterial,blueMaterial, grayMaterial, gridMaterial, gridLinesMaterial, shadowMaterial;
+    PhongMaterial redMaterial, greenMaterial,blueMaterial, grayMaterial, gridMaterial, gridLinesMaterial, gridSurfMaterial, shadowMaterial;
+    
+    TreeMap<Double,Pair<String, Group>> xtics, ytics, ztics;
+    TreeMap[] tics = {xtics, ztics, ytics}; // (the drawn subset of the candidates)
     
-    Map<Double,Pair<String, Group>> xtics, ytics, ztics;
-    Map[] tics = {xtics, ztics, ytics}; 
+    // Candidate ticks per axis (position and text), drawn every tic_strides[ax] (see tic_stride())
+    final List<TreeMap<Double, String>> tic_candidates = List.of(new TreeMap<Double, String>(), new TreeMap<Double, String>(), new TreeMap<Double, String>());
+    final int[] tic_strides = {1, 1, 1};
+    static final double TIC_GAP = 8;           // min gap between tick labels in pixels
+    static final double TIC_HYSTERESIS = 1.25; // (margin for a denser subset)
+    private final Map<Group, LabelOverlay.Label> tic_overlay_labels = new LinkedHashMap<Group, LabelOverlay.Label>();
     
     private Controls child;
     Text text;
     
-    double last_time = 0, last_time2 = 0;
+    // Render loop, which only runs while something animates (see wake())
+    private final AnimationTimer render_loop = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            // Print FPS in standard output on every 1000 frames
+            if (fps_print){
+                fps_frames +=1;
+                if (fps_frames==1000){
+                    System.out.println("FPS: " + 1000/((now-fps_time)/1e9));
+                    fps_frames=0;
+                    fps_time = now;
+                }
+            }
+
+            // Frictionless spin, in steps of the elapsed time (in frames of 16 ms)
+            if (rotation_remainder!=0){
+                double step = last_frame==0 || spin_restarted? 1 : (now-last_frame)/16e6;
+                spin_restarted = false;
+                cameraXform.ry.setAngle(cameraXform.ry.getAngle()-rotation_remainder*step);  
+                if (deceleration!=1)
+                    rotation_remainder = rotation_remainder*Math.pow(deceleration, step/2);
+                if (Math.abs(rotation_remainder)<0.01)
+                    rotation_remainder=0;
+                seeLabels();   
+                governor.interact(now);
+            }
+            
+            // Less detail while interacting too slowly, and full detail at rest
+            if (governor.frame(now, last_frame!=0))
+                set_quality(governor.level());
+            last_frame = now;
+            
+            // Follow the camera with the 2D labels
+            label_overlay.update(camera, view.getWidth(), view.getHeight());
+            update_splats();
+
+            if (screenshot){
+                WritableImage imageS = new WritableImage(Integer.parseInt(child.picXdimSpinner.getValue().toString()),Integer.parseInt(child.picYdimSpinner.getValue().toString()));
+                WritableImage image = view.getScene().snapshot(imageS); 
+                BufferedImage b = SwingFXUtils.fromFXImage(image, null);
+
+                try { ImageIO.write(b, "png", child.screenshotf);} catch (IOException e) { }
+                screenshot = false;                      
+            }
+            
+            // Settled, so stop until the next wake() (running on while interacting, so that
+            // the governor measures the frame times of drags and zooms as well)
+            if (rotation_remainder==0 && !screenshot && !fps_print && governor.level()==QualityGovernor.FULL
+                    && !governor.interacting(now)){
+                render_loop_running = false;
+                stop();
+            }
+        }
+    };
+    private boolean render_loop_running = false;
+    private long last_frame = 0; // (pulse time in ns, or 0 after a wake())
+    private boolean spin_restarted = false; // (a drag has set a new spin, to start with one step)
+    private final QualityGovernor governor = new QualityGovernor();
+    private final List<Node> quality_hidden = new ArrayList<Node>(); // (nodes hidden by set_quality())
+    
+    /**
+     * Starts the render loop (if stopped), for at least one frame. It is to be called 
+     * after anything that changes the view or starts an animation (on the JavaFX thread).
+     */
+    void wake(){
+        if (render_loop_running)
+            return;
+        render_loop_running = true;
+        last_frame = 0;
+        render_loop.start();
+    }
 
     double rot;
     
@@ -132,7 +260,7 @@ public class Juniper extends Application {
     
     public static final boolean fps_print = false;
     int fps_frames = 0;
-    double fps_time = 0;
+    long fps_time = 0;
     
     @Override
     public void start(Stage primaryStage) {     
@@ -142,8 +270,13 @@ public class Juniper extends Application {
         buildCamera();
         buildAxes();   
         
-        Scene scene = new Scene(root, 970, 600, true, SceneAntialiasing.BALANCED);//.DISABLED);
-        scene.setFill(Color.WHITE/*LIGHTGRAY*/);
+        view = new SubScene(root, 970, 600, true, SceneAntialiasing.BALANCED);//.DISABLED);
+        view.setFill(Color.WHITE/*LIGHTGRAY*/);
+        Pane layers = new Pane(splats.view(), view, label_overlay);
+        view.widthProperty().bind(layers.widthProperty());
+        view.heightProperty().bind(layers.heightProperty());
+        Scene scene = new Scene(layers, 970, 600);
+        scene.setFill(Color.WHITE);
         
         handleKeyboard(scene, world);
         handleMouse(scene, world);
@@ -152,7 +285,7 @@ public class Juniper extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
        
-        scene.setCamera(camera);
+        view.setCamera(camera);
         root.getChildren().add(world);
         world.setTx(-AXIS_LENGTH/2);
         world.setTy(-AXIS_LENGTH/2);
@@ -170,9 +303,10 @@ public class Juniper extends Application {
         }       
 
         // Axis labels
-        xlabel = new Text3DMesh("x label", "Liberation Serif", 25, true);  xlabel.setHeight(0);
-        ylabel = new Text3DMesh("y label", "Liberation Serif", 25, true);  ylabel.setHeight(0); 
-        zlabel = new Text3DMesh("z label", "Liberation Serif", 25, true);  zlabel.setHeight(0); 
+        GlyphText.warm("Liberation Serif", 25);
+        xlabel = new GlyphText("x label", "Liberation Serif", 25);
+        ylabel = new GlyphText("y label", "Liberation Serif", 25);
+        zlabel = new GlyphText("z label", "Liberation Serif", 25);
         
         
         xlabel.setScaleX(0.8);  xlabel.setScaleY(0.8);
@@ -253,56 +387,19 @@ public class Juniper extends Application {
 
         // Tics
         for (int ax=0; ax<3; ax+=1){
-            tics[ax] = new HashMap();
+            tics[ax] = new TreeMap();
         }
         drawTics();
         
-        world.getChildren().remove(fog);
-        world.getChildren().add(fog);       
-        
         child = new Controls();
         child.setVisible(true);
         child.parent = this;
        
-        new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                // Print FPS in standard output on every 1000 frames
-                if (fps_print){
-                fps_frames +=1;
-                    if (fps_frames==1000){                    
-                        double time = System.currentTimeMillis();
-                        System.out.println("FPS: " + 1000/(time-fps_time)*1000);
-                        fps_frames=0;
-                        fps_time = time;
-                    }
-                }
-                    
-                if (rotation_remainder!=0){
-                    double time = System.currentTimeMillis();
-                    //if (1/((time-last_time2)/1000)<=120) // vsync equivalent?
-                    {
-                        double step = (time-last_time)/16;
-                        cameraXform.ry.setAngle(cameraXform.ry.getAngle()-rotation_remainder*step);  
-                        if (deceleration!=1)
-                            rotation_remainder = rotation_remainder*Math.pow(deceleration, step/2);
-                        if (Math.abs(rotation_remainder)<0.01)
-                            rotation_remainder=0;
-                        seeLabels();   
-                        last_time2 = time; 
-                    }
-                    last_time = time;                    
-                }
-                if (screenshot){
-                    WritableImage imageS = new WritableImage(Integer.parseInt(child.picXdimSpinner.getValue().toString()),Integer.parseInt(child.picYdimSpinner.getValue().toString()));
-                    WritableImage image = primaryStage.getScene().snapshot(imageS); 
-                    BufferedImage b = SwingFXUtils.fromFXImage(image, null);
-                    
-                    try { ImageIO.write(b, "png", child.screenshotf);} catch (IOException e) { }
-                    screenshot = false;                      
-                }                
-            }            
-        }.start();
+        // Keep the render loop running only while needed
+        render_queue.set_on_drain(this::wake);
+        view.widthProperty().addListener((o, a, b) -> wake());
+        view.heightProperty().addListener((o, a, b) -> wake());
+        wake();
         
     }
  
@@ -458,50 +555,176 @@ public class Juniper extends Application {
             }      
         }
         
+        // Draw more or fewer ticks, as their spacing on screen changes
+        update_tics();
+        
+        // Create the geometry of newly visible shadow planes
+        ensure_shadows();
+        
         // Resort the elements to help with the transparency issue, just in case 
         // the rotation brings something transparent in front of other elements
-        Xform[] to_sort = new Xform[1];
-        int i_=0;
+        Point3D eye = camera.localToScene(0, 0, 0);
         for (int ax=0; ax<point_shadows.length; ax++){
             if (point_shadows[ax].isVisible()){
-                to_sort[i_]=point_shadows[ax];
-                depth_sort(to_sort);
+                for (Node n: point_shadows[ax].getChildren())
+                    ((LightPaths) n).sort(eye);
             }
         }
 
         for (int ax=0; ax<gridSurfGroups.length; ax++){
             if (gridSurfGroups[ax].isVisible()){               
-                to_sort[i_]=gridSurfGroups[ax];
-                depth_sort(to_sort);
+                for (Node n: gridSurfGroups[ax].getChildren())
+                    ((GridMesh) n).sort(eye);
             }
         }
         
-        // Also update the color map, if it is based on the depth from the camera
-        if (depth_colormap) {
+        // Also update the color map, if it is based on the depth from the camera, and the fog
+        // (the fog only at full quality, see set_quality())
+        if (depth_colormap || governor.level()==QualityGovernor.FULL) {
             depth_color();
         }  
         point_labels.setViewOrder(0);
+        update_lod();
+        declutter_labels();
+        wake();
+    }
+    
+    /**
+     * Hides the chunks of batched points that are out of view, and draws the distant
+     * ones with less detail (see PointCloud), even less at the MINIMAL quality.
+     */
+    private void update_lod(){
+        if (view==null)
+            return;
+        double lod_pixels = PointCloud.LOD_PIXELS*(governor.level()==QualityGovernor.MINIMAL? 4 : 1);
+        for (Node n: points.getChildren())
+            if (n instanceof PointCloud)
+                ((PointCloud) n).update_view(camera, view.getWidth(), view.getHeight(), lod_pixels);
+    }
+    
+    /**
+     * Renders the splatted points, if the view or the points have changed (see 
+     * SplatRenderer), with one in four points at the MINIMAL quality.
+     */
+    private void update_splats(){
+        if (!splats.active())
+            return;
+        double width = view.getWidth(), height = view.getHeight();
+        CameraProjection p;
+        try {
+            p = new CameraProjection(camera, points, width, height);
+        } catch (NonInvertibleTransformException e) {
+            return;
+        }
+        int stride = governor.level()==QualityGovernor.MINIMAL? 4 : 1;
+        splats.render(p, (int) width, (int) height, stride, depth_colormap, Colormap.fog()>0? fog_plane(points) : null);
+    }
+    
+    /**
+     * Switches the level of detail (see QualityGovernor). REDUCED hides the point labels
+     * and light paths (and the fog is not updated, see seeLabels()), and MINIMAL also shows
+     * one in four of the individual points and coarser batched points. FULL shows again 
+     * whatever was hidden here.
+     */
+    private void set_quality(int level){
+        for (Node n: quality_hidden)
+            n.setVisible(true);
+        quality_hidden.clear();
+        if (level>=QualityGovernor.REDUCED){
+            quality_hide(point_labels);
+            for (Xform shadows: point_shadows)
+                quality_hide(shadows);
+        }
+        if (level>=QualityGovernor.MINIMAL){
+            int k = 0;
+            for (Node n: points.getChildren())
+                if (!(n instanceof PointCloud) && k++%4!=0)
+                    quality_hide(n);
+        }
+        update_lod();
+        if (level==QualityGovernor.FULL){
+            // (the light paths were not sorted while hidden)
+            seeLabels();
+        }
+    }
+    
+    private void quality_hide(Node n){
+        if (n.isVisible()){
+            n.setVisible(false);
+            quality_hidden.add(n);
+        }
+    }
+    
+    /**
+     * Hides the 3D point labels that would overlap others on screen (offered in order
+     * of priority), or exceed the label budget (see LabelDeclutter). The 2D labels are
+     * decluttered by the overlay itself.
+     */
+    private void declutter_labels(){
+        if (view==null || point_labels.getChildren().isEmpty())
+            return;
+        double width = view.getWidth(), height = view.getHeight();
+        CameraProjection p;
+        try {
+            p = new CameraProjection(camera, point_labels, width, height);
+        } catch (NonInvertibleTransformException e) {
+            return;
+        }
+        label_declutter.reset(width, height);
+        double[] xy = new double[2];
+        for (Node n: point_labels.getChildren()){
+            double x = n.getTranslateX(), y = n.getTranslateY(), z = n.getTranslateZ();
+            Bounds b = ((Group) n).getChildren().get(0).getBoundsInParent();
+            double scale = p.pixels(x, y, z, 1);
+            double w = b.getWidth()*scale, h = b.getHeight()*scale;
+            boolean shown = p.project(x, y, z, xy) && xy[0]+w>=0 && xy[0]-w<=width && xy[1]+h>=0 && xy[1]-h<=height
+                         && label_declutter.place(xy[0]-w/2, xy[1]-h/2, w, h);
+            n.setVisible(shown);
+        }
     }
     
     /**
      * Adjusts the point colors according to the distance from the user (camera),
-     * in order to help with depth perception.
+     * in order to help with depth perception, and blends them towards the background 
+     * according to their depth in the plot (fog), in the same bulk pass. The fog is 
+     * a colour per point (see Colormap), so it costs nothing in fill rate.
      */
     private void depth_color(){
-        if (!depth_colormap)
+        boolean fogged = Colormap.fog()>0;
+        if (!depth_colormap && !fogged && !fog_applied && !depth_applied)
+            return;
+        fog_applied = fogged;
+        depth_applied = depth_colormap;
+        PlotBuild pb = shown_plot;
+        if (pb==null)
             return;
         
+        // Batched points are recoloured through their texture coordinates instead
+        for (Node n: points.getChildren()){
+            if (n instanceof PointCloud){
+                depth_color((PointCloud) n, pb, fogged);
+                return;
+            }
+        }
+        
+        // Distances are computed in bulk, from the camera position in the local coordinates of the points
+        List<Node> nodes = points.getChildren();
+        int n = Math.min(nodes.size(), pb.colours.length);
+        if (depth_dists.length<n)
+            depth_dists = new double[n];
+        double[] dists = depth_dists;
+        Point3D cam = points.sceneToLocal(camera.localToScene(0, 0, 0));
+        
         double min_dis=Double.MAX_VALUE;
         double max_dis=0;
-        double[] dists= new double[points.getChildren().size()];
-
-        int dists_i=0;
         // For every point,
-        for (Node n: points.getChildren()){
-            double dis = depth_tester.get_distance_from_cam(n, cameraXform);
+        for (int i=0; i<n && depth_colormap; i++){
+            Node p = nodes.get(i);
+            double dx = p.getTranslateX()-cam.getX(), dy = p.getTranslateY()-cam.getY(), dz = p.getTranslateZ()-cam.getZ();
+            double dis = Math.sqrt(dx*dx+dy*dy+dz*dz);
             
             // store the distance,
-            dists[dists_i++]=dis;
+            dists[i]=dis;
             if (Double.isNaN(dis)){
                 continue;
             }
@@ -510,59 +733,80 @@ public class Juniper extends Application {
             max_dis = Math.max(max_dis, dis);
         }
 
-        dists_i=0;
-        for (Node n: points.getChildren()){
-            double dis = dists[dists_i++];
-            double x = (dis-min_dis)/(max_dis-min_dis);
-            PhongMaterial m = (PhongMaterial) ((Shape3D) n).getMaterial();
-            javafx.scene.paint.Color c = m.getDiffuseColor();
-            
-            // Translate the relative distance into the viridis color palette.
-            double r,g,b,a;
-            r= x*x*x*-1215.35 + x*x*2144.48 + x*-733.556 + 60.4242; 
-            g= x*x*x* 548.202 + x*x*-960.762+ x* 620.136 + 38.2424;
-            b= x*x*x* 837.818 + x*x*-1588.92 + x*625.281 + 146.576;
-            r=Math.floor(Math.min(255,Math.max(0,r)))/255;
-            g=Math.floor(Math.min(255,Math.max(0,g)))/255;
-            b=Math.floor(Math.min(255,Math.max(0,b)))/255;
-            a=c.getOpacity();
-            m=new PhongMaterial();
-            m.setDiffuseColor(new Color(r,g,b,a));
-            
-            // Apply to object (point).
-            ((Shape3D) n).setMaterial(m);                 
+        // Translate the relative distance and the depth into a shared material of the palette (keeping the transparency)
+        double[] fp = fogged? fog_plane(points) : null;
+        for (int i=0; i<n; i++){
+            Shape3D sh = (Shape3D) nodes.get(i);
+            int colour = depth_colormap? Colormap.index((dists[i]-min_dis)/(max_dis-min_dis)) : pb.colours[i];
+            int fog = fp==null? 0 : Colormap.fog_level(fp[0]*sh.getTranslateX()+fp[1]*sh.getTranslateY()+fp[2]*sh.getTranslateZ()+fp[3]);
+            PhongMaterial m = Colormap.material(colour, pb.alphas[i], fog);
+            if (sh.getMaterial()!=m)
+                sh.setMaterial(m);
         }
-        
-        // Same colours also the the shadows (projections) of the points
-        for (int ax=0; ax<point_shadow_projections.length; ax++){
-            if (point_shadow_projections[ax].isVisible()){
-                dists_i=0;       
-                for (Node n: point_shadow_projections[ax].getChildren()){
-                    double dis = dists[dists_i++];
-                    double x = (dis-min_dis)/(max_dis-min_dis);
-
-                    double r,g,b,a;
-                    r= x*x*x*-1215.35 + x*x*2144.48 + x*-733.556 + 60.4242; 
-                    g= x*x*x* 548.202 + x*x*-960.762+ x* 620.136 + 38.2424;
-                    b= x*x*x* 837.818 + x*x*-1588.92 + x*625.281 + 146.576;
-                    r=Math.floor(Math.min(255,Math.max(0,r)))/255;
-                    g=Math.floor(Math.min(255,Math.max(0,g)))/255;
-                    b=Math.floor(Math.min(255,Math.max(0,b)))/255;   
-                
-                    PhongMaterial m = (PhongMaterial) ((Shape3D) n).getMaterial();
-                    javafx.scene.paint.Color c = m.getDiffuseColor();
-                    a=c.getOpacity();
-                                  
-                    m=new PhongMaterial();
-                    m.setDiffuseColor(new Color(r,g,b,a));
-                    ((Shape3D) n).setMaterial(m);      
-                    
-                    if (Double.isNaN(dis)){
-                        ((Shape3D) n).setVisible(false);
-                    }
-                }
+        // (the projections are rasterised with the point colours, see ProjectionRaster)
+    }
+    
+    private double[] depth_dists = new double[0];
+    private boolean fog_applied = false; // (so that the fog is removed once)
+    private boolean depth_applied = false; // (so that the plot colours are restored once)
+    
+    private void depth_color(PointCloud pc, PlotBuild pb, boolean fogged){
+        float[] p = pc.positions;
+        int n = pc.size();
+        int[] colours = pc.colours;
+        
+        if (depth_colormap){
+            Point3D cam = pc.sceneToLocal(camera.localToScene(0, 0, 0));
+            double min_dis=Double.MAX_VALUE;
+            double max_dis=0;
+            if (depth_dists.length<n)
+                depth_dists = new double[n];
+            double[] dists = depth_dists;
+            for (int i=0; i<n; i++){
+                double dx = p[i*3]-cam.getX(), dy = p[i*3+1]-cam.getY(), dz = p[i*3+2]-cam.getZ();
+                dists[i] = Math.sqrt(dx*dx+dy*dy+dz*dz);
+                min_dis = Math.min(min_dis, dists[i]);
+                max_dis = Math.max(max_dis, dists[i]);
             }
-        }    
+            for (int i=0; i<n; i++)
+                colours[i] = Colormap.index((dists[i]-min_dis)/(max_dis-min_dis));
+        } else {
+            System.arraycopy(pb.colours, 0, colours, 0, n); // (in case they were depth colours)
+        }
+        
+        int[] fogs = null;
+        if (fogged){
+            double[] fp = fog_plane(pc);
+            fogs = pc.fogs!=null && pc.fogs.length==n? pc.fogs : new int[n];
+            for (int i=0; i<n; i++)
+                fogs[i] = Colormap.fog_level(fp[0]*p[i*3]+fp[1]*p[i*3+1]+fp[2]*p[i*3+2]+fp[3]);
+        }
+        pc.recolour(colours, pc.alphas, fogs);
+    }
+    
+    /**
+     * The depth in the fog of a position (in the local coordinates of a node) is 
+     * x*f[0]+y*f[1]+z*f[2]+f[3], from 0 to 1 along the view direction through the 
+     * plot (over its diagonal, centred at its centre).
+     * 
+     * @return f
+     */
+    private double[] fog_plane(Node space){
+        Point3D eye = space.sceneToLocal(camera.localToScene(0, 0, 0));
+        Point3D f = space.sceneToLocal(camera.localToScene(0, 0, 1)).subtract(eye).normalize();
+        Point3D c = space.sceneToLocal(world.localToScene(AXIS_LENGTH/2, AXIS_LENGTH/2, AXIS_LENGTH/2));
+        double span = AXIS_LENGTH*Math.sqrt(2);
+        return new double[]{f.getX()/span, f.getY()/span, f.getZ()/span, 0.5-f.dotProduct(c)/span};
+    }
+    
+    /**
+     * Changes the fog (0 for none, 1 for the points at the back hidden in the background).
+     */
+    void set_fog(double blending){
+        Colormap.set_fog(blending);
+        PointCloud.material();
+        depth_color();
+        wake();
     }
     
     /**
@@ -590,155 +834,40 @@ public class Juniper extends Application {
     /**
      * Generates 3D objects for the ticks (appearing as slanted cylinders), 
      * their grid lines, and their labels with or without rectangles borders.
+     * Only a subset of the candidate ticks is drawn, as dense as the labels allow
+     * on screen (see tic_stride()).
      * 
      */
     private void drawTics() {
-        for (int ax=0; ax<gridLinesGroups.length; ax+=1)
-            gridLinesGroups[ax].getChildren().clear();            
-        for (int ax=0; ax<ticMarksGroups.length; ax+=1)
-            ticMarksGroups[ax].getChildren().clear();
-        
+        drawTics(new boolean[]{true, true, true});
+    }
+    
+    /**
+     * As drawTics(), only for some of the axes (the rest keep their ticks).
+     * 
+     * @param axes the axes to redraw
+     */
+    private void drawTics(boolean[] axes) {
         // For every axis,
         for (int ax=0; ax<3; ax+=1){            
+            if (!axes[ax])
+                continue;
             ticsGroups[ax].getChildren().clear();
-            gridSurfGroups[ax].getChildren().clear();
-            
-            // For every tick (position is precalculated)
-            for (Object i_: tics[ax].keySet()){ 
-                double i = (double) i_;
-                
-                // Create an FXyz 3D mesh for the text
-                Text3DMesh tm = new Text3DMesh((String)((Pair)tics[ax].get(i)).getKey(), "Liberation Serif", 25, true); 
-                tm.setHeight(0);
-                tm.setTextureModeNone(Color.LIGHTGRAY);
-                tm.setScaleX(0.8*(int)child.lsize.getValue()/12.0);  tm.setScaleY(0.8*(int)child.lsize.getValue()/12.0);
-                tm.setTranslateX(-tm.getLayoutBounds().getCenterX());
-                tm.setTranslateY(-tm.getLayoutBounds().getCenterY());
-
-                // Prepare rectangles as grid surfaces 
-                Rectangle grid_surf = new Rectangle(AXIS_LENGTH,AXIS_LENGTH);
-                grid_surf.setFill(Color.GREY);
-                grid_surf.setOpacity(grid_opacity);
-                switch(ax){
-                    case 0: grid_surf.setTranslateZ(AXIS_LENGTH/2); grid_surf.setRotationAxis(new Point3D(1,0,1)); grid_surf.setRotate(180);break;
-                    case 2: grid_surf.setTranslateX(0);  break;
-                    case 1: grid_surf.setTranslateZ(AXIS_LENGTH/2); grid_surf.setRotationAxis(new Point3D(1,0,0)); grid_surf.setRotate(90); break;
-                }
-                gridSurfGroups[ax].getChildren().add(grid_surf);
-                
-                // Prepare cylidners as grid lines,
-                Cylinder grid = new Cylinder(1, AXIS_LENGTH);
-                grid.setMaterial(gridLinesMaterial);
-                switch(ax){
-                    case 0: grid.setTranslateZ(AXIS_LENGTH/2); grid.setRotationAxis(new Point3D(1,0,0)); grid.setRotate(90);  break;
-                    case 2: grid.setTranslateX(AXIS_LENGTH/2); grid.setRotationAxis(new Point3D(0,0,1)); grid.setRotate(-90); break;
-                    case 1: grid.setTranslateZ(AXIS_LENGTH/2); grid.setRotationAxis(new Point3D(1,0,0)); grid.setRotate(90);  break;
-                }
-                if ((ax==0) || (ax==2)) gridLinesGroups[ax].getChildren().add(grid);
-                
-                // The cylinders have a different direction according to the axis 
-                if (ax==0){
-                    {
-                        Cylinder grid_ = new Cylinder(1, AXIS_LENGTH);
-                        grid_.setMaterial(gridLinesMaterial);
-                        grid_.setTranslateY(AXIS_LENGTH/2);
-                        gridLinesGroups[3].getChildren().add(grid_);
-                    }
-                    {
-                        Cylinder grid_ = new Cylinder(1, AXIS_LENGTH);
-                        grid_.setMaterial(gridLinesMaterial);
-                        grid_.setTranslateY(AXIS_LENGTH/2);
-                        grid_.setTranslateZ(AXIS_LENGTH);
-                        gridLinesGroups[4].getChildren().add(grid_);
-                    }
-                }
-                if (ax==2){
-                    {
-                        Cylinder grid_ = new Cylinder(1, AXIS_LENGTH);
-                        grid_.setMaterial(gridLinesMaterial);
-                        grid_.setTranslateY(AXIS_LENGTH/2);
-                        gridLinesGroups[5].getChildren().add(grid_);
-                    }
-                    {
-                        Cylinder grid_ = new Cylinder(1, AXIS_LENGTH);
-                        grid_.setMaterial(gridLinesMaterial);
-                        grid_.setTranslateY(AXIS_LENGTH/2);
-                        grid_.setTranslateX(AXIS_LENGTH);
-                        gridLinesGroups[6].getChildren().add(grid_);
-                    }
-                }
-                if (ax==1){                    
-                    gridLinesGroups[1].getChildren().add(grid);
-                    
-                    {
-                        Cylinder grid_ = new Cylinder(1, AXIS_LENGTH);
-                        grid_.setRotationAxis(new Point3D(1,0,0)); grid_.setRotate(90);
-                        grid_.setMaterial(gridLinesMaterial);
-                        grid_.setTranslateZ(AXIS_LENGTH/2);
-                        grid_.setTranslateX(AXIS_LENGTH);
-                        gridLinesGroups[7].getChildren().add(grid_);
-                    }
-                    {
-                        Cylinder grid_ = new Cylinder(1, AXIS_LENGTH);
-                        grid_.setMaterial(gridLinesMaterial);
-                        grid_.setRotationAxis(new Point3D(0,0,1)); grid_.setRotate(-90);
-                        grid_.setTranslateX(AXIS_LENGTH/2);
-                        gridLinesGroups[8].getChildren().add(grid_);
-                    }
-                    {
-                        Cylinder grid_ = new Cylinder(1, AXIS_LENGTH);
-                        grid_.setMaterial(gridLinesMaterial);
-                        grid_.setRotationAxis(new Point3D(0,0,1)); grid_.setRotate(-90);
-                        grid_.setTranslateX(AXIS_LENGTH/2);
-                        grid_.setTranslateZ(AXIS_LENGTH);
-                        gridLinesGroups[9].getChildren().add(grid_);
-                    }
-                }
-                
-                // Small cylinder for the tick itself on the axis, with a 45 degree rotation effect
-                Cylinder cy = new Cylinder(1, AXIS_LENGTH*tic_mark_perc);
-   
-                switch(ax){
-                    case 0: cy.setRotationAxis(new Point3D(1,0,0)); cy.setRotate(45);   break;
-                    case 2: cy.setRotationAxis(new Point3D(0,0,1)); cy.setRotate(-45);   break;
-                    case 1: cy.setRotationAxis(new Point3D(-1,0,1)); cy.setRotate(-90); break;
-                }
-                ticMarksGroups[ax].getChildren().add(cy);
-                
-                if (ax==0){
-                    Cylinder cy_ = new Cylinder(1, AXIS_LENGTH*tic_mark_perc);
-                    cy_.setRotationAxis(new Point3D(1,0,0)); cy_.setRotate(45+90); 
-                    ticMarksGroups[3].getChildren().add(cy_);
-                }
-                if (ax==2){
-                    Cylinder cy_ = new Cylinder(1, AXIS_LENGTH*tic_mark_perc);
-                    cy_.setRotationAxis(new Point3D(0,0,1)); cy_.setRotate(-45+90); 
-                    ticMarksGroups[4].getChildren().add(cy_);
-                }
-                if (ax==1){
-                    for (int ax_=5; ax_<8; ax_++){ 
-                        Cylinder cy_ = new Cylinder(1, AXIS_LENGTH*tic_mark_perc);
-                        cy_.setRotationAxis(new Point3D((ax_%2==1)?1:-1 ,0,1)); cy_.setRotate(-90); 
-                        ticMarksGroups[ax_].getChildren().add(cy_);
-                    }
-                }
-                
-                // Enclose the label in an invisible border (for now)
-                Rectangle re = new Rectangle();
-                re.setFill(Color.WHITESMOKE);
-                re.setWidth(tm.getLayoutBounds().getWidth());
-                re.setHeight(tm.getLayoutBounds().getHeight());  
-                re.setTranslateX(-tm.getLayoutBounds().getWidth()/2);
-                re.setTranslateY(-tm.getLayoutBounds().getHeight()/2);
-                re.setTranslateZ(3); // workaround for overlapping surfaces
-                re.setVisible(false);
-                
-                Group tgr = (Group) ((Pair)tics[ax].get(i)).getValue();
-                
-                tgr.getChildren().addAll(tm, re);                
-                tgr.getTransforms().addAll(label_heading, label_roll);
-                ticsGroups[ax].getChildren().add(tgr);
+            for (Object t: tics[ax].keySet()){
+                Group tgr = (Group) ((Pair)tics[ax].get(t)).getValue();
+                tgr.getChildren().clear();
+                tgr.getTransforms().clear();
+                tic_overlay_labels.remove(tgr);
             }
+            tics[ax].clear();
+            
+            // For every tick of the subset (position is precalculated)
+            tic_strides[ax] = tic_stride(ax, 1);
+            int k = 0;
+            for (Map.Entry<Double, String> e: tic_candidates.get(ax).entrySet())
+                if (k++%tic_strides[ax]==0)
+                    draw_tic(ax, e.getKey(), e.getValue(), null);
+            build_tic_meshes(ax);
             
             // Group transformations to follow view preferences, such as the distance of the labels from the axes
             double ddis = 0;
@@ -782,72 +911,231 @@ public class Juniper extends Application {
                 ticMarksGroups[7].setTranslateX(AXIS_LENGTH+Math.sqrt(2)*AXIS_LENGTH*tic_mark_perc/2/2); 
                 ticMarksGroups[7].setTranslateZ(-Math.sqrt(2)*AXIS_LENGTH*tic_mark_perc/2/2);
             }
-            
-            // Move tick objects to the correct location (maybe more tidy outside the axis for loop)
-            int j=0;
-            for (Object i_: tics[ax].keySet()){
-                double i = (double) i_;
-                Group tgr = (Group) ((Pair)tics[ax].get(i)).getValue();
-               
-                switch(ax){
-                    case 0: gridLinesGroups[ax].getChildren().get(j).setTranslateX((AXIS_LENGTH)*i); break;
-                    case 1: gridLinesGroups[ax].getChildren().get(j).setTranslateY((AXIS_LENGTH)*i); break;
-                    case 2: gridLinesGroups[ax].getChildren().get(j).setTranslateZ((AXIS_LENGTH)*i); break;
-                }
-                switch(ax){
-                    case 0: gridSurfGroups[ax].getChildren().get(j).setTranslateX(-AXIS_LENGTH/2+(AXIS_LENGTH)*i); break;
-                    case 1: gridSurfGroups[ax].getChildren().get(j).setTranslateY(-AXIS_LENGTH/2+(AXIS_LENGTH)*i); break;
-                    case 2: gridSurfGroups[ax].getChildren().get(j).setTranslateZ((AXIS_LENGTH)*i); break;
-                }
-                if ((i==0) || (i==1.0)){
-                    gridSurfGroups[ax].getChildren().get(j).setVisible(false);
-                    gridLinesGroups[ax].getChildren().get(j).setVisible(false);
-                }
-                if (ax==0){
-                    gridLinesGroups[3].getChildren().get(j).setTranslateX((AXIS_LENGTH)*i);
-                    gridLinesGroups[4].getChildren().get(j).setTranslateX((AXIS_LENGTH)*i);
-                }
-                if (ax==2){
-                    gridLinesGroups[5].getChildren().get(j).setTranslateZ((AXIS_LENGTH)*i);
-                    gridLinesGroups[6].getChildren().get(j).setTranslateZ((AXIS_LENGTH)*i);
-                }
-                if (ax==1){
-                    gridLinesGroups[7].getChildren().get(j).setTranslateY((AXIS_LENGTH)*i);
-                    gridLinesGroups[8].getChildren().get(j).setTranslateY((AXIS_LENGTH)*i);
-                    gridLinesGroups[9].getChildren().get(j).setTranslateY((AXIS_LENGTH)*i);
-                    
-                }
-                
-                switch(ax){
-                    case 0: tgr.setTranslateX((AXIS_LENGTH)*i); ticMarksGroups[ax].getChildren().get(j).setTranslateX((AXIS_LENGTH)*i); break;
-                    case 1: tgr.setTranslateY((AXIS_LENGTH)*i); ticMarksGroups[ax].getChildren().get(j).setTranslateY((AXIS_LENGTH)*i); break;
-                    case 2: tgr.setTranslateZ((AXIS_LENGTH)*i); ticMarksGroups[ax].getChildren().get(j).setTranslateZ((AXIS_LENGTH)*i); break;
-                }
-                
-                switch(ax){
-                    case 0: ticMarksGroups[3].getChildren().get(j).setTranslateX((AXIS_LENGTH)*i); break;
-                    case 1: for (int ax_=5; ax_<8; ax_++) ticMarksGroups[ax_].getChildren().get(j).setTranslateY((AXIS_LENGTH)*i); break;
-                    case 2: ticMarksGroups[4].getChildren().get(j).setTranslateZ((AXIS_LENGTH)*i); break;
-                }
-                j++;
-            }
-            
-        }
-        
-        // Fog transparency workaround (as last transparency layer since it corresponts to visibility)
-        if (fog.isVisible()){
-            world.getChildren().remove(fog);
-            world.getChildren().add(fog);
         }
+        label_overlay.set_scale(LabelOverlay.TICKS, (int)child.lsize.getValue()/12.0);
+        label_overlay.set(LabelOverlay.TICKS, new ArrayList<LabelOverlay.Label>(tic_overlay_labels.values()));
         seeLabels();
     }    
     
+    /**
+     * Creates the label of a tick, with its border (see drawTics()).
+     * 
+     * @param like a drawn tick of the same axis to match (label rotation, border and colour), or null
+     */
+    private void draw_tic(int ax, double i, String text, Group like){
+        Group tgr = new Group();
+        
+        // Create an FXyz 3D mesh for the text (or an empty placeholder, with a 2D label following it)
+        Node tm;
+        if (overlay_labels){
+            tm = new Group();
+            tic_overlay_labels.put(tgr, new LabelOverlay.Label(LabelOverlay.TICKS, tgr, 0, 0, 0, text, tm));
+        } else {
+            GlyphText tm3 = new GlyphText(text, "Liberation Serif", 25); 
+            Node like_tm = like==null? null : like.getChildren().getFirst();
+            tm3.setTextureModeNone(like_tm instanceof GlyphText? ((GlyphText) like_tm).getTextureColour() : Color.LIGHTGRAY);
+            tm3.setScaleX(0.8*(int)child.lsize.getValue()/12.0);  tm3.setScaleY(0.8*(int)child.lsize.getValue()/12.0);
+            tm3.setTranslateX(-tm3.getLayoutBounds().getCenterX());
+            tm3.setTranslateY(-tm3.getLayoutBounds().getCenterY());
+            tm = tm3;
+        }
+        
+        // Enclose the label in an invisible border (for now, and empty for 2D labels)
+        Rectangle re = new Rectangle();
+        re.setFill(Color.WHITESMOKE);
+        re.setWidth(tm.getLayoutBounds().getWidth());
+        re.setHeight(tm.getLayoutBounds().getHeight());  
+        re.setTranslateX(-tm.getLayoutBounds().getWidth()/2);
+        re.setTranslateY(-tm.getLayoutBounds().getHeight()/2);
+        re.setTranslateZ(3); // workaround for overlapping surfaces
+        re.setVisible(like!=null && like.getChildren().getLast().isVisible());
+        
+        tgr.getChildren().addAll(tm, re);                
+        tgr.getTransforms().addAll(label_heading, label_roll);
+        if (like!=null){
+            for (Node n: tgr.getChildren())
+                n.setRotate(like.getChildren().getFirst().getRotate());
+        }
+        switch(ax){
+            case 0: tgr.setTranslateX((AXIS_LENGTH)*i); break;
+            case 1: tgr.setTranslateY((AXIS_LENGTH)*i); break;
+            case 2: tgr.setTranslateZ((AXIS_LENGTH)*i); break;
+        }
+        ticsGroups[ax].getChildren().add(tgr);
+        tics[ax].put(i, new Pair(text, tgr));
+    }
+    
+    /**
+     * Removes the label of a drawn tick.
+     */
+    private void remove_tic(int ax, double i){
+        Group tgr = (Group) ((Pair) tics[ax].remove(i)).getValue();
+        ticsGroups[ax].getChildren().remove(tgr);
+        tgr.getChildren().clear();
+        tgr.getTransforms().clear();
+        tic_overlay_labels.remove(tgr);
+    }
+    
+    /**
+     * Rebuilds the grid lines, grid surfaces and tick marks of the drawn ticks of an axis,
+     * as one mesh per group (see GridMesh). The cylinders of each group are replaced by 
+     * beams with the same centres and rotations.
+     */
+    private void build_tic_meshes(int ax){
+        double L = AXIS_LENGTH, m = AXIS_LENGTH*tic_mark_perc;
+        Point3D X = Rotate.X_AXIS, Z = Rotate.Z_AXIS;
+        
+        // Groups of the axis (the rest belong to the other axes)
+        int[] line_groups = ax==0? new int[]{0, 3, 4} : ax==1? new int[]{1, 7, 8, 9} : new int[]{2, 5, 6};
+        int[] mark_groups = ax==0? new int[]{0, 3} : ax==1? new int[]{1, 5, 6, 7} : new int[]{2, 4};
+        Map<Xform, List<double[]>> lines = new LinkedHashMap<Xform, List<double[]>>();
+        Map<Xform, List<double[]>> marks = new LinkedHashMap<Xform, List<double[]>>();
+        for (int g: line_groups)
+            lines.put(gridLinesGroups[g], new ArrayList<double[]>());
+        for (int g: mark_groups)
+            marks.put(ticMarksGroups[g], new ArrayList<double[]>());
+        List<Double> surfaces = new ArrayList<Double>();
+        
+        for (Object i_: tics[ax].keySet()){
+            double i = (double) i_, p = L*i;
+            boolean side = (i==0) || (i==1.0); // (no inner line or surface on the sides of the plot)
+            switch(ax){
+                case 0:
+                    if (!side) beam(lines.get(gridLinesGroups[0]), p, 0, L/2, L, 90, X);
+                    beam(lines.get(gridLinesGroups[3]), p, L/2, 0, L, 0, X);
+                    beam(lines.get(gridLinesGroups[4]), p, L/2, L, L, 0, X);
+                    beam(marks.get(ticMarksGroups[0]), p, 0, 0, m, 45, X);
+                    beam(marks.get(ticMarksGroups[3]), p, 0, 0, m, 45+90, X);
+                    break;
+                case 1:
+                    if (!side) beam(lines.get(gridLinesGroups[1]), 0, p, L/2, L, 90, X);
+                    beam(lines.get(gridLinesGroups[7]), L, p, L/2, L, 90, X);
+                    beam(lines.get(gridLinesGroups[8]), L/2, p, 0, L, -90, Z);
+                    beam(lines.get(gridLinesGroups[9]), L/2, p, L, L, -90, Z);
+                    beam(marks.get(ticMarksGroups[1]), 0, p, 0, m, -90, new Point3D(-1,0,1));
+                    for (int ax_=5; ax_<8; ax_++)
+                        beam(marks.get(ticMarksGroups[ax_]), 0, p, 0, m, -90, new Point3D((ax_%2==1)?1:-1 ,0,1));
+                    break;
+                case 2:
+                    if (!side) beam(lines.get(gridLinesGroups[2]), L/2, 0, p, L, -90, Z);
+                    beam(lines.get(gridLinesGroups[5]), 0, L/2, p, L, 0, Z);
+                    beam(lines.get(gridLinesGroups[6]), L, L/2, p, L, 0, Z);
+                    beam(marks.get(ticMarksGroups[2]), 0, 0, p, m, -45, Z);
+                    beam(marks.get(ticMarksGroups[4]), 0, 0, p, m, -45+90, Z);
+                    break;
+            }
+            if (!side)
+                surfaces.add(p);
+        }
+        
+        for (Map.Entry<Xform, List<double[]>> e: lines.entrySet())
+            e.getKey().getChildren().setAll(GridMesh.beams(e.getValue(), 1, gridLinesMaterial));
+        for (Map.Entry<Xform, List<double[]>> e: marks.entrySet())
+            e.getKey().getChildren().setAll(GridMesh.beams(e.getValue(), 1, gridLinesMaterial));
+        double[] at = new double[surfaces.size()];
+        for (int k=0; k<at.length; k++)
+            at[k] = surfaces.get(k);
+        gridSurfGroups[ax].getChildren().setAll(GridMesh.surfaces(ax, at, L, gridSurfMaterial));
+    }
+    
+    /**
+     * Adds the ends of a beam, given as a Cylinder along y (its centre, height, and rotation).
+     */
+    private static void beam(List<double[]> l, double x, double y, double z, double length, double angle, Point3D axis){
+        Point3D d = new Rotate(angle, axis).deltaTransform(0, length/2, 0);
+        l.add(new double[]{x-d.getX(), y-d.getY(), z-d.getZ(), x+d.getX(), y+d.getY(), z+d.getZ()});
+    }
+    
+    /**
+     * Chooses every how many candidate ticks of an axis to draw, so that their labels
+     * are apart by at least their size along the axis on screen. It is a power of two, 
+     * so that the denser subsets contain the sparser ones (and a change only adds or 
+     * removes ticks), and the current stride is kept near the threshold (to not flicker
+     * while zooming).
+     * 
+     * @param current the current stride
+     */
+    private int tic_stride(int ax, int current){
+        TreeMap<Double, String> candidates = tic_candidates.get(ax);
+        int n = candidates.size();
+        if (view==null || n<3)
+            return 1;
+        CameraProjection p;
+        try {
+            p = new CameraProjection(camera, ticsGroups[ax], view.getWidth(), view.getHeight());
+        } catch (NonInvertibleTransformException e) {
+            return current;
+        }
+        
+        // Axis on screen
+        double[] end = new double[3], a = new double[2], b = new double[2];
+        end[ax] = AXIS_LENGTH;
+        if (!p.project(0, 0, 0, a) || !p.project(end[0], end[1], end[2], b))
+            return current;
+        double dx = b[0]-a[0], dy = b[1]-a[1], length = Math.hypot(dx, dy);
+        
+        // Closest candidates, and the largest label (estimated from the number of characters)
+        double gap = 1, previous = Double.NaN;
+        int chars = 1;
+        for (Map.Entry<Double, String> e: candidates.entrySet()){
+            gap = Math.min(gap, e.getKey()-previous>0? e.getKey()-previous : 1);
+            previous = e.getKey();
+            chars = Math.max(chars, e.getValue().length());
+        }
+        double lscale = (int)child.lsize.getValue()/12.0;
+        end[ax] = AXIS_LENGTH/2;
+        double h = overlay_labels? LabelOverlay.FONT_SIZE*lscale : p.pixels(end[0], end[1], end[2], 25*0.8*lscale);
+        double w = chars*h*0.55;
+        if (!tics[ax].isEmpty()){
+            Group g = (Group) ((Pair) tics[ax].firstEntry().getValue()).getValue();
+            if (g.getChildren().getFirst().getRotate()!=0){ // (vertical labels)
+                double t = w; w = h; h = t;
+            }
+        }
+        double needed = length<1? Double.POSITIVE_INFINITY : (Math.abs(dx)*w+Math.abs(dy)*h)/length+TIC_GAP;
+        double spacing = gap*length;
+        
+        int stride = 1;
+        while (stride<n && stride*spacing<needed)
+            stride *= 2;
+        if (stride<current && stride*spacing<needed*TIC_HYSTERESIS)
+            stride = Math.min(current, stride*2);
+        return stride;
+    }
     
+    /**
+     * Adds or removes ticks when the subset to draw changes (see tic_stride()), 
+     * e.g. while zooming.
+     */
+    private void update_tics(){
+        boolean changed = false;
+        for (int ax=0; ax<3; ax++){
+            int stride = tic_stride(ax, tic_strides[ax]);
+            if (stride==tic_strides[ax] || tics[ax].isEmpty())
+                continue;
+            tic_strides[ax] = stride;
+            changed = true;
+            
+            // (the first candidate is always drawn, as a reference for the new ones)
+            Group like = (Group) ((Pair) tics[ax].firstEntry().getValue()).getValue();
+            int k = 0;
+            for (Map.Entry<Double, String> e: tic_candidates.get(ax).entrySet()){
+                boolean shown = k++%stride==0, drawn = tics[ax].containsKey(e.getKey());
+                if (shown && !drawn)
+                    draw_tic(ax, e.getKey(), e.getValue(), like);
+                else if (!shown && drawn)
+                    remove_tic(ax, e.getKey());
+            }
+            build_tic_meshes(ax);
+        }
+        if (changed)
+            label_overlay.set(LabelOverlay.TICKS, new ArrayList<LabelOverlay.Label>(tic_overlay_labels.values()));
+    }
+
     /**
      * Mostly classical JavaFX code to create the cylinder for axes (inspired by
      * the official MoleculeSampleApp). It also adds the hidden (mirror) axes etc.
-     * into the node hierarchy, and builds the fog (as a series of semi-transparent
-     * rectangles). 
+     * into the node hierarchy.
      */
     private void buildAxes() {
         redMaterial = new PhongMaterial();
@@ -874,6 +1162,9 @@ public class Juniper extends Application {
         gridLinesMaterial.setDiffuseColor(Color.color(0.5,0.5,0.5,0.43));
         gridLinesMaterial.setSpecularColor(Color.color(0.5,0.5,0.5,0.43));
         
+        gridSurfMaterial = new PhongMaterial();
+        gridSurfMaterial.setDiffuseColor(Color.color(0.5,0.5,0.5,grid_opacity));
+        
         shadowMaterial = new PhongMaterial();
         shadowMaterial.setDiffuseColor(Color.color(0.5,0.5,0.5,shadow_opacity));
         shadowMaterial.setSpecularColor(Color.color(0.5,0.5,0.5,shadow_opacity));
@@ -966,22 +1257,6 @@ public class Juniper extends Application {
             world.getChildren().add(gridSurfGroups[ax]);
             gridSurfGroups[ax].setVisible(false);
         }
-                
-        fog.setTranslateX(0.5*AXIS_LENGTH);
-        fog.setTranslateY(0.5*AXIS_LENGTH);
-        fog.setTranslateZ(0.5*AXIS_LENGTH);
-            
-        fog.getTransforms().addAll(label_heading, label_roll);
-        fog.setVisible(false);
-        for (int i=40; i>=0; i--){Rectangle grid_surf = new Rectangle(4*AXIS_LENGTH,4*AXIS_LENGTH);
-            grid_surf.setFill(Color.WHITE);
-            grid_surf.setTranslateX(-2*AXIS_LENGTH);
-            grid_surf.setTranslateY(-2*AXIS_LENGTH);
-            grid_surf.setTranslateZ(-AXIS_LENGTH*Math.sqrt(2)/2+i/40.0*AXIS_LENGTH*Math.sqrt(2));
-            grid_surf.setOpacity(0);
-            fog.getChildren().add(grid_surf);
-        }
-        world.getChildren().add(fog);    
     }   
     
     /**
@@ -989,387 +1264,600 @@ public class Juniper extends Application {
      * the parsed data points into 3D elements.
      */
     public void plot() {
+        plot(null);
+    }
+    
+    /**
+     * Plots the dataset with the current settings. The points and per-point labels 
+     * are built on a background thread as a detached subgraph, while the previous 
+     * plot remains interactive, and are then swapped into the scene in one step. 
+     * A build is abandoned if a newer plot is requested in the meantime.
+     * Only the channels (see CH_*) whose settings differ from the shown plot are
+     * recomputed. If the positions and the point type are the same, the existing 
+     * nodes and meshes are updated in place, otherwise the existing nodes of the
+     * same point type are reused for the first points of the new plot.
+     * 
+     * @param done (optional) code to run on the JavaFX thread after the new plot is shown
+     */
+    public void plot(Runnable done) {
         draw=true;
-        
-        points.getChildren().clear();
-        for (int ax=0; ax<point_shadows.length; ax++){
-            point_shadows[ax].getChildren().clear();
-            point_shadow_projections[ax].getChildren().clear();
+        long generation = plot_generation.incrementAndGet();
+        
+        // Snapshot of the dataset and the settings, as they are when requested
+        PlotBuild build = new PlotBuild();
+        build.data = child.data;
+        build.stringtypes = child.stringtypes;
+        build.indexes = child.variable_selection();
+        build.logscales = child.logscale_selection();
+        build.z4_selection = child.z4cb1.getSelectedIndex();
+        build.z4_column = child.z4cb2.getSelectedIndex();
+        build.z4_count = (int) child.z4js.getValue();
+        build.label_size = (int) child.z4cb3.getValue()/12.0;
+        build.pointtype = pointtype;
+        build.pointsize = pointsize;
+        build.overlay_labels = overlay_labels;
+        build.base = shown_plot;
+        build.dirty = dirty_channels(build, build.base);
+        
+        // Nodes that can be reused (only touched on this thread)
+        if (build.base!=null && build.base.pointtype==build.pointtype && build.pointtype<3)
+            build.pool = new ArrayList<Node>(points.getChildren());
+        
+        plot_builder.submit(() -> {
+            try {
+                if (!build_plot(build, generation)){
+                    if (generation==plot_generation.get())
+                        draw=false;
+                    return;
+                }
+                Platform.runLater(() -> {
+                    if (generation!=plot_generation.get())
+                        return; // (superseded while waiting)
+                    if (shown_plot!=build.base){ // (should not happen, but then the changes are relative to another plot)
+                        plot(done);
+                        return;
+                    }
+                    show_plot(build);
+                    if (done!=null)
+                        done.run();
+                });
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                draw=false;
+            }
+        });
+    }
+    
+    // Plot channels, for tracking what needs to be recomputed
+    static final int CH_POSITION = 1, CH_COLOUR = 2, CH_SIZE = 4, CH_ALPHA = 8,
+                     CH_LABELS = 16, CH_SHAPE = 32, CH_TICKS = 64, CH_ALL = 127;
+    
+    // (channel of each dimension, x y z z1 z2 z3 z4)
+    private static final int[] DIMENSION_CHANNELS = {CH_POSITION|CH_TICKS, CH_POSITION|CH_TICKS, CH_POSITION|CH_TICKS, 
+                                                     CH_COLOUR, CH_SIZE, CH_ALPHA, CH_LABELS};
+    
+    /**
+     * The plot that is currently shown (only changed on the JavaFX thread).
+     */
+    private volatile PlotBuild shown_plot = null;
+    
+    /**
+     * @return the channels that differ between the settings of a new plot and a previous one
+     */
+    private int dirty_channels(PlotBuild pb, PlotBuild last){
+        if (last==null || last.data!=pb.data || last.stringtypes!=pb.stringtypes)
+            return CH_ALL;
+        int dirty = 0;
+        for (int i=0; i<dimensions; i++)
+            if (pb.indexes[i]!=last.indexes[i] || pb.logscales[i]!=last.logscales[i])
+                dirty |= DIMENSION_CHANNELS[i];
+        if (pb.pointtype!=last.pointtype)
+            dirty |= CH_SHAPE;
+        if (pb.pointsize!=last.pointsize)
+            dirty |= CH_SIZE;
+        if (pb.z4_selection!=last.z4_selection || pb.z4_column!=last.z4_column
+                || pb.z4_count!=last.z4_count || pb.label_size!=last.label_size
+                || pb.overlay_labels!=last.overlay_labels)
+            dirty |= CH_LABELS;
+        return dirty;
+    }
+    
+    /**
+     * @return true if the nodes of the shown plot can be updated in place
+     */
+    private static boolean in_place(PlotBuild pb){
+        return (pb.dirty&(CH_POSITION|CH_SHAPE))==0;
+    }
+    
+    /**
+     * The inputs and the (detached) results of a plot build.
+     */
+    private static class PlotBuild {
+        DataTable data;
+        ArrayList<Map<String, Integer>> stringtypes;
+        int[] indexes;
+        boolean[] logscales;
+        int z4_selection, z4_column, z4_count;
+        double label_size;
+        int pointtype;
+        double pointsize;
+        boolean overlay_labels;
+        PlotBuild base;       // the plot shown when this one was requested
+        int dirty;            // channels to recompute (relative to the base)
+        List<Node> pool;      // nodes of the base that can be reused
+        
+        double[][] array;
+        double[] mins, maxs;
+        Xform points = new Xform();
+        List<Node> nodes = new ArrayList<Node>(); // (new nodes, after the reused ones)
+        List<Node> labels = new ArrayList<Node>();
+        List<Integer> labelled = new ArrayList<Integer>(); // (points of the 3D labels, created when shown)
+        List<LabelOverlay.Label> overlay = new ArrayList<LabelOverlay.Label>();
+        boolean labels_built = false;
+        double[] sizes;
+        int[] colours, alphas;
+        int count = 0;
+        float[] splat_positions, splat_sizes; // (for the SPLAT point type, instead of nodes)
+    }
+    
+    /**
+     * Normalises the data and creates the point and label nodes (not attached to the scene).
+     * Without changes in the positions or the point type, only the attributes are computed,
+     * to be applied to the existing nodes when shown.
+     * 
+     * @return false if there is nothing to show, or if a newer plot has been requested
+     */
+    private boolean build_plot(PlotBuild pb, long generation) {
+        int n = pb.data.size();
+        if (n==0)
+            return false;
+        boolean batched = pb.pointtype>=3;
+        
+        normalise(pb);
+        attributes(pb);
+        
+        // Count of points with nodes (a hard limit for the number of nodes for now)
+        pb.count = batched? n : Math.min(n, 50000);
+        
+        if (in_place(pb)){
+            // (the base nodes are updated when shown)
+        } else if (batched){
+            float[] cloud_positions = new float[n*3], cloud_sizes = new float[n];
+            for (int i=0; i<n; i++){
+                cloud_positions[i*3]   = (float) (pb.array[0][i]*AXIS_LENGTH);
+                cloud_positions[i*3+1] = (float) (pb.array[2][i]*AXIS_LENGTH);
+                cloud_positions[i*3+2] = (float) (pb.array[1][i]*AXIS_LENGTH);
+                cloud_sizes[i] = (float) pb.sizes[i];
+            }
+            if (pb.pointtype==SPLAT){
+                pb.splat_positions = cloud_positions;
+                pb.splat_sizes = cloud_sizes;
+            } else {
+                pb.nodes.add(new PointCloud(pb.pointtype-3, cloud_positions, cloud_sizes, pb.colours.clone(), pb.alphas.clone()));
+            }
+        } else {
+            // New nodes only for the points beyond the reusable ones
+            int reused = pb.pool==null? 0 : Math.min(pb.pool.size(), pb.count);
+            for (int i=reused; i<pb.count; i++){
+                // (give up if a newer plot has been requested in the meantime)
+                if ((i&1023)==0 && generation!=plot_generation.get())
+                    return false;
+                pb.nodes.add(point_node(pb, i, null));
+            }
         }
+        if (!in_place(pb))
+            pb.points.getChildren().setAll(pb.nodes);
         
-        int count = 0;        
-        double[][] array = new double[dimensions][child.dataset.size()];
-                
-        int[] indexes = child.variable_selection();
-        boolean[] logscales = child.logscale_selection();
-
-        for (int i=0; i<dimensions; i+=1) System.out.print(logscales[i]+" ");System.out.println();
-        
-        // For every value series in the dataset (e.g. for different columns in .csv files)
-        for (double[] values: child.dataset){
+        if (!in_place(pb) || (pb.dirty&(CH_LABELS|CH_SIZE))!=0){
+            pb.labels_built = true;
             
-            // For every available dimension type (spatial etc.)
-            for (int i=0; i<dimensions; i+=1)
-                
-                if (indexes[i]==-1)
-                    array[i][count] = 0; // ignore if dimension is not used
-                else {
-                    int stringcard = child.stringtypes.get(indexes[i]).size();
-                    if ((logscales[i]==false)||(stringcard>1 && stringcard<150))
-                        array[i][count] = values[indexes[i]]; // copy as is
-                    else
-                        array[i][count] = Math.log(values[indexes[i]]); // apply logscale if used
+            // In order of priority for decluttering, i.e. by the selection column (z4cb2), 
+            // highest values first, unless the bottom values are selected
+            List<Integer> labelled = new ArrayList<Integer>();
+            if (pb.indexes[6]!=-1)
+                for (int i=0; i<pb.count; i++)
+                    if (!Double.isNaN(pb.array[6][i]))
+                        labelled.add(i);
+            double sign = pb.z4_selection==1? 1 : -1;
+            if (pb.z4_column>=0)
+                labelled.sort(Comparator.comparingDouble(i -> {
+                    double v = pb.data.get(i, pb.z4_column);
+                    return Double.isNaN(v)? Double.MAX_VALUE : sign*v;
+                }));
+            
+            for (int k=0; k<labelled.size(); k++){
+                if ((k&1023)==0 && generation!=plot_generation.get())
+                    return false;
+                int i = labelled.get(k);
+                if (pb.overlay_labels){
+                    pb.overlay.add(overlay_label(pb, i));
+                } else {
+                    GlyphText.prepare(pb.data.text(i, pb.indexes[6]), "Liberation Serif", 25);
+                    pb.labelled.add(i);
                 }
-            count++;
+            }
         }
-        if (count==0)
-            return;
-        count = 0;
-        
-        // For every dimension
-        for (int i=0; i<dimensions-1; i++){
-                        
+        System.out.println(n);
+        return generation==plot_generation.get();
+    }
+    
+    /**
+     * Copies and normalises the assigned columns (only of the changed dimensions, 
+     * the rest are shared with the base plot). The ranges are kept for the tics.
+     */
+    private void normalise(PlotBuild pb){
+        DataTable data = pb.data;
+        int n = data.size();
+        int[] indexes = pb.indexes;
+        boolean[] logscales = pb.logscales;
+        PlotBuild base = pb.dirty==CH_ALL? null : pb.base;
+        
+        pb.array = new double[dimensions][];
+        pb.mins = new double[dimensions];
+        pb.maxs = new double[dimensions];
+        
+        for (int i=0; i<dimensions; i++) System.out.print(logscales[i]+" ");System.out.println();
+        
+        // For every available dimension type (spatial etc.), copy the assigned column
+        for (int i=0; i<dimensions; i+=1){
+            if (base!=null && (pb.dirty&DIMENSION_CHANNELS[i])==0){
+                pb.array[i] = base.array[i];
+                pb.mins[i] = base.mins[i];
+                pb.maxs[i] = base.maxs[i];
+                continue;
+            }
+            if (indexes[i]==-1){
+                pb.array[i] = new double[n]; // ignore if dimension is not used
+                continue;
+            }
+            pb.array[i] = data.column(indexes[i]); // copy as is
+            double[] column = pb.array[i];
+            int stringcard = pb.stringtypes.get(indexes[i]).size();
+            if (!((logscales[i]==false)||(stringcard>1 && stringcard<150)))
+                for (int j=0; j<n; j++)
+                    column[j] = Math.log(column[j]); // apply logscale if used
+            
+            // Normalise (not for z4 labels)
             double max = Double.MIN_VALUE;
             double min = Double.MAX_VALUE;
-            
-            if (i!=6){ // not for z4 labels
-                for (int j=0; j<array[i].length; j++){
-                    if (array[i][j]>max) max=array[i][j];
-                    if (array[i][j]<min) min=array[i][j];                
-                }
-                for (int j=0; j<array[i].length; j++){
-                    array[i][j] = (array[i][j]-min)/(max-min);            
+            if (i!=6){
+                for (int j=0; j<n; j++){
+                    if (column[j]>max) max=column[j];
+                    if (column[j]<min) min=column[j];                
                 }
-            }
-                       
-            // Tics (0, 1, 2 are the spatial dimensions)
-            if (i<3){
-                int ax=i; if (i!=0) ax=3-i; // (applied after y <-> z renaming issue)
-                
-                // Erase previous tics
-                for (Object t_:tics[ax].keySet()){
-                    double t= (double) t_;
-                    Group g= (Group) ((Pair)tics[ax].get(t)).getValue();
-                    g.getChildren().clear();
-                    g.getTransforms().clear();
+                for (int j=0; j<n; j++){
+                    column[j] = (column[j]-min)/(max-min);            
                 }
-                tics[ax].clear(); // (double check if enough for garbage collection)      
-                                
-                // New tics
-                double minor_tic = Math.pow(10, Math.floor(Math.log10(Math.abs(max-min))-1));
-                double major_tic = 10 * minor_tic;
-                
-                System.out.println(min+" "+max+" "+minor_tic+" "+ major_tic+" "+ major_tic*Math.floor(min/major_tic));
-                
-                int stringcard = child.stringtypes.get(indexes[i]).size();                
-                if (stringcard>1 && stringcard<150){
-                    // Label ticks
-                    for (String s: child.stringtypes.get(indexes[i]).keySet()){
-                        tics[ax].put(child.stringtypes.get(indexes[i]).get(s)/(stringcard-1.0), new Pair(s, new Group()));
-                    }                    
-                } else {                    
-                    // Numerical ticks
-                    NumberFormat df = DecimalFormat.getInstance();
-                    df.setMinimumFractionDigits(0);
-                    df.setMaximumFractionDigits((int) (-Math.min(0,Math.log(minor_tic))));
-                    df.setRoundingMode(RoundingMode.HALF_EVEN);
-                    
-                    for (double tic = major_tic*Math.floor(min/major_tic); tic<=max; tic+= major_tic){
-                        double pos = (tic-min)/(max-min);
-                        if (!(pos>=0 && pos<=1))
-                            continue;
-                        if (logscales[i]){  
-                            tics[ax].put(pos, new Pair("E"+df.format(tic), new Group()));
-                        }
-                        else 
-                            tics[ax].put(pos, new Pair(df.format(tic), new Group()));
-                    }
-                }                
-            }            
-        }
-        drawTics();
-        
-        { // Prepare z4 labels (labels per point)
-            point_labels.getChildren().clear();
-            if ((indexes[6]!=-1) && (child.z4cb1.getSelectedIndex()!=2)){
-                List <Pair<Double,Integer>> selection = new ArrayList <Pair<Double,Integer>>();
-                for (int i=0; i<child.dataset.size(); i++)
-                    selection.add(new Pair (child.dataset.get(i)[child.z4cb2.getSelectedIndex()],i));
-                
-                // Do a top/bottom N selection for decluttering, according to the GUI settings
-                selection.sort(pairComparator);                                
-                switch ((int) child.z4cb1.getSelectedIndex()){
-                    case 0: // Top
-                        for (int i=array[6].length-1-(int)child.z4js.getValue(); i>=0; i--){
-                            array[6][selection.get(i).getValue()]=Float.NaN;
-                        }
-                        break;
-                    case 1: // Bottom                        
-                        for (int i=(int)child.z4js.getValue(); i<array[6].length; i++){
-                            array[6][selection.get(i).getValue()]=Float.NaN;
-                        }
-                        break;
-                    default: // All
-                        break;
-                }               
             }
+            pb.mins[i] = min;
+            pb.maxs[i] = max;
         }
         
-        double tmpsize = pointsize;
-        double transperency = 0.7;
-        double r=0,g=0.8,b=0;
-        
-        // For every point in the dataset,
-        for (int i=0; i<child.dataset.size(); i++){
-            PhongMaterial m = new PhongMaterial();         
-            if (indexes[5]!=-1) // z3 transparency
-                transperency =0.1+0.9*array[5][i];
-            if (indexes[3]!=-1){ // z1 colour coding
-                double x = array[3][i];
-                // Viridis colour palette 
-                r= x*x*x*-1215.35 + x*x*2144.48 + x*-733.556 + 60.4242; 
-		g= x*x*x* 548.202 + x*x*-960.762+ x* 620.136 + 38.2424;
-		b= x*x*x* 837.818 + x*x*-1588.92 + x*625.281 + 146.576;
-		r=Math.floor(Math.min(255,Math.max(0,r)))/255;
-		g=Math.floor(Math.min(255,Math.max(0,g)))/255;
-		b=Math.floor(Math.min(255,Math.max(0,b)))/255;
-            }
-            
-            // Prepare colours
-            m.setDiffuseColor(Color.color(r,g,b,transperency));            
-            Color shadow_color = Color.color(r,g,b,indexes[5]!=-1?transperency:shadow_opacity);
-            
-            PhongMaterial shadow_vector_material = new PhongMaterial(); 
-            shadow_vector_material.setDiffuseColor(shadow_color);
-            
-            if (indexes[4]!=-1)
-                tmpsize = pointsize*(0.1+0.9*array[4][i]);
-            
-            // According to the point type (sphere, box, bar), create the corresponding objects
-            switch (pointtype){
-                case 0: // Sphere
-                    {
-                    Sphere ob = new Sphere(tmpsize); // Point
-                
-                    ob.setMaterial(m);
-                    ob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                    ob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                    ob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                    points.getChildren().add(ob);                      
-                    
-                    // Shadows and projections
-                    {
-                        Cylinder sob = new Cylinder(tmpsize, array[2][i]*(AXIS_LENGTH));  sob.setMaterial(shadowMaterial);                  
-                        sob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        sob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        sob.setTranslateY((array[2][i]*(AXIS_LENGTH))/2);
-                        point_shadows[0].getChildren().add(sob);       
-                        
-                        Cylinder rc = new Cylinder(tmpsize,0); rc.setMaterial(shadow_vector_material); 
-                        rc.setTranslateX( array[0][i]*AXIS_LENGTH);
-                        rc.setTranslateZ( array[1][i]*AXIS_LENGTH);
-                        point_shadow_projections[0].getChildren().add(rc);
-                    }
-                    {
-                        Cylinder sob = new Cylinder(tmpsize, array[0][i]*(AXIS_LENGTH)); sob.setMaterial(shadowMaterial);                   
-                        sob.setTranslateX((array[0][i]*(AXIS_LENGTH))/2);
-                        sob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        sob.setRotate(-90);
-                        point_shadows[1].getChildren().add(sob);
-                        
-                        Cylinder rc = new Cylinder(tmpsize,0); rc.setMaterial(shadow_vector_material);
-                        rc.setTranslateZ( array[1][i]*AXIS_LENGTH);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        rc.setRotate(-90);
-                        point_shadow_projections[1].getChildren().add(rc);
-                    }
-                    {
-                        Cylinder sob = new Cylinder(tmpsize, array[1][i]*(AXIS_LENGTH)); sob.setMaterial(shadowMaterial);  
-                        sob.setRotationAxis(new Point3D(1,0,0));
-                        sob.setRotate(90);
-                        sob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        sob.setTranslateZ(array[1][i]*AXIS_LENGTH/2);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadows[2].getChildren().add(sob);
-                        
-                        Cylinder rc = new Cylinder(tmpsize,0); rc.setMaterial(shadow_vector_material); 
-                        rc.setRotationAxis(new Point3D(1,0,0));
-                        rc.setRotate(90);
-                        rc.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadow_projections[2].getChildren().add(rc);
-                    }
-                    {
-                        Cylinder sob = new Cylinder(tmpsize, (1-array[0][i])*(AXIS_LENGTH)); sob.setMaterial(shadowMaterial);                   
-                        sob.setTranslateX(((1+array[0][i])*(AXIS_LENGTH))/2);
-                        sob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        sob.setRotate(-90);
-                        point_shadows[3].getChildren().add(sob);
-                        
-                        Cylinder rc = new Cylinder(tmpsize,0); rc.setMaterial(shadow_vector_material); 
-                        rc.setRotate(-90);
-                        rc.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        rc.setTranslateX(AXIS_LENGTH);
-                        point_shadow_projections[3].getChildren().add(rc);
-                    }
-                    {
-                        Cylinder sob = new Cylinder(tmpsize, (1-array[1][i])*(AXIS_LENGTH)); sob.setMaterial(shadowMaterial);  
-                        sob.setRotationAxis(new Point3D(1,0,0));
-                        sob.setRotate(90);
-                        sob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        sob.setTranslateZ((1+array[1][i])*AXIS_LENGTH/2);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadows[4].getChildren().add(sob);
-                        
-                        Cylinder rc = new Cylinder(tmpsize,0); rc.setMaterial(shadow_vector_material); 
-                        rc.setRotationAxis(new Point3D(1,0,0));
-                        rc.setRotate(90);
-                        rc.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        rc.setTranslateZ(AXIS_LENGTH);
-                        point_shadow_projections[4].getChildren().add(rc);
-                    }
-                    
+        // Prepare z4 labels (labels per point)
+        if ((pb.dirty&CH_LABELS)!=0 && (indexes[6]!=-1) && (pb.z4_selection!=2)){
+            double[] labels = pb.array[6];
+            List <Pair<Double,Integer>> selection = new ArrayList <Pair<Double,Integer>>();
+            for (int i=0; i<n; i++)
+                selection.add(new Pair (data.get(i, pb.z4_column),i));
+
+            // Do a top/bottom N selection for decluttering, according to the GUI settings
+            selection.sort(pairComparator);                                
+            switch (pb.z4_selection){
+                case 0: // Top
+                    for (int i=labels.length-1-pb.z4_count; i>=0; i--){
+                        labels[selection.get(i).getValue()]=Float.NaN;
                     }
                     break;
-                case 1: // Box
-                    {
-                    Box ob = new Box(tmpsize,tmpsize,tmpsize); // Point         
-                    ob.setMaterial(m);
-                    ob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                    ob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                    ob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                    points.getChildren().add(ob); 
-                    
-                    // Shadows and projections
-                    {
-                        Box sob = new Box(tmpsize, array[2][i]*(AXIS_LENGTH)-tmpsize/2 ,tmpsize);  sob.setMaterial(shadowMaterial);                  
-                        sob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        sob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        sob.setTranslateY((array[2][i]*(AXIS_LENGTH)-tmpsize/2)/2);                        
-                        point_shadows[0].getChildren().add(sob);
-                        
-                        Box rc = new Box(tmpsize, 0 ,tmpsize);  rc.setMaterial(shadow_vector_material);                  
-                        rc.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        rc.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        rc.setTranslateY(0);                        
-                        point_shadow_projections[0].getChildren().add(rc);
-                        
-                    }                     
-                    {
-                        Box sob = new Box(array[0][i]*(AXIS_LENGTH)-tmpsize/2, tmpsize ,tmpsize); sob.setMaterial(shadowMaterial);                   
-                        sob.setTranslateX((array[0][i]*(AXIS_LENGTH)-tmpsize/2)/2);
-                        sob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadows[1].getChildren().add(sob);
-                        
-                        Box rc = new Box(0, tmpsize ,tmpsize); rc.setMaterial(shadow_vector_material);                   
-                        rc.setTranslateX(0);
-                        rc.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadow_projections[1].getChildren().add(rc);
-                                                
-                    } 
-                    {
-                        Box sob = new Box(tmpsize, tmpsize, array[1][i]*(AXIS_LENGTH)-tmpsize/2); sob.setMaterial(shadowMaterial);                   
-                        sob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        sob.setTranslateZ((array[1][i]*(AXIS_LENGTH)-tmpsize/2)/2);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadows[2].getChildren().add(sob);
-                        
-                        Box rc = new Box(tmpsize, tmpsize, 0); rc.setMaterial(shadow_vector_material);                   
-                        rc.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        rc.setTranslateZ(0);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadow_projections[2].getChildren().add(rc);
-                                               
-                    }                     
-                    
-                    {
-                        Box sob = new Box(AXIS_LENGTH-array[0][i]*(AXIS_LENGTH)-tmpsize/2, tmpsize ,tmpsize); sob.setMaterial(shadowMaterial);                   
-                        sob.setTranslateX(array[0][i]*(AXIS_LENGTH)+(AXIS_LENGTH-array[0][i]*(AXIS_LENGTH)+tmpsize/2)/2);
-                        sob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadows[3].getChildren().add(sob);
-                        
-                        Box rc = new Box(0, tmpsize ,tmpsize); rc.setMaterial(shadow_vector_material);                   
-                        rc.setTranslateX(AXIS_LENGTH);
-                        rc.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadow_projections[3].getChildren().add(rc);
-                                                
-                    } 
-                    {
-                        Box sob = new Box(tmpsize, tmpsize, AXIS_LENGTH-array[1][i]*(AXIS_LENGTH)-tmpsize/2); sob.setMaterial(shadowMaterial);                   
-                        sob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        sob.setTranslateZ(array[1][i]*(AXIS_LENGTH)+(AXIS_LENGTH-array[1][i]*(AXIS_LENGTH)+tmpsize/2)/2);
-                        sob.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadows[4].getChildren().add(sob);
-                        
-                        Box rc = new Box(tmpsize, tmpsize, 0); rc.setMaterial(shadow_vector_material);                   
-                        rc.setTranslateX(array[0][i]*AXIS_LENGTH);
-                        rc.setTranslateZ(AXIS_LENGTH);
-                        rc.setTranslateY(array[2][i]*AXIS_LENGTH);
-                        point_shadow_projections[4].getChildren().add(rc);
-                        
-                    } 
+                case 1: // Bottom                        
+                    for (int i=pb.z4_count; i<labels.length; i++){
+                        labels[selection.get(i).getValue()]=Float.NaN;
                     }
-                    
                     break;
-                case 2: // Bar
-                    {
-                    Box ob = new Box(tmpsize,array[2][i]*AXIS_LENGTH,tmpsize); // Point (no projections for bars)
-                    ob.setMaterial(m);
-                    ob.setTranslateX(array[0][i]*AXIS_LENGTH);
-                    ob.setTranslateZ(array[1][i]*AXIS_LENGTH);
-                    ob.setTranslateY(array[2][i]*AXIS_LENGTH/2);
-                    points.getChildren().add(ob);
-                    }
+                default: // All
                     break;
+            }               
+        }
+    }
+    
+    /**
+     * Point sizes (z2), palette entries (z1) and transparency levels (z3) of all points.
+     */
+    private void attributes(PlotBuild pb){
+        int n = pb.data.size();
+        double[][] array = pb.array;
+        int[] indexes = pb.indexes;
+        PlotBuild base = pb.dirty==CH_ALL? null : pb.base;
+        
+        if (base!=null && (pb.dirty&CH_SIZE)==0){
+            pb.sizes = base.sizes;
+        } else {
+            pb.sizes = new double[n];
+            for (int i=0; i<n; i++)
+                pb.sizes[i] = indexes[4]!=-1? pb.pointsize*(0.1+0.9*array[4][i]) : pb.pointsize;
+        }
+        
+        // Colours are quantised to the palette (z1 colour coding) and transparency levels (z3)
+        if (base!=null && (pb.dirty&CH_COLOUR)==0){
+            pb.colours = base.colours;
+        } else {
+            pb.colours = new int[n];
+            for (int i=0; i<n; i++)
+                pb.colours[i] = indexes[3]!=-1? Colormap.index(array[3][i]) : Colormap.DEFAULT;
+        }
+        if (base!=null && (pb.dirty&CH_ALPHA)==0){
+            pb.alphas = base.alphas;
+        } else {
+            pb.alphas = new int[n];
+            for (int i=0; i<n; i++)
+                pb.alphas[i] = Colormap.alpha_level(indexes[5]!=-1? 0.1+0.9*array[5][i] : 0.7);
+        }
+    }
+    
+    /**
+     * Creates the node of a point (sphere, box, bar), or updates an existing one of the same type
+     * (except for its material, see point_material()).
+     */
+    private Node point_node(PlotBuild pb, int i, Node ob){
+        double[][] array = pb.array;
+        double tmpsize = pb.sizes[i];
+        
+        switch (pb.pointtype){
+            case 0: // Sphere
+                {
+                Sphere sp = ob==null? new Sphere(tmpsize) : (Sphere) ob; // Point
+                sp.setRadius(tmpsize);
+                ob = sp;
+                }
+                break;
+            case 1: // Box
+                {
+                Box bo = ob==null? new Box() : (Box) ob; // Point         
+                bo.setWidth(tmpsize); bo.setHeight(tmpsize); bo.setDepth(tmpsize);
+                ob = bo;
+                }
+                break;
+            default: // Bar
+                {
+                Box bo = ob==null? new Box() : (Box) ob; // Point (no projections for bars)
+                bo.setWidth(tmpsize); bo.setHeight(array[2][i]*AXIS_LENGTH); bo.setDepth(tmpsize);
+                ob = bo;
+                }
+                break;
+        }
+        ob.setTranslateX(array[0][i]*AXIS_LENGTH);
+        ob.setTranslateZ(array[1][i]*AXIS_LENGTH);
+        ob.setTranslateY(pb.pointtype==2? array[2][i]*AXIS_LENGTH/2 : array[2][i]*AXIS_LENGTH);
+        return ob;
+    }
+    
+    /**
+     * Assigns the shared material of the colour of a point (instead of one per point).
+     * The shared materials are watched by the shown nodes (setMaterial() registers a 
+     * listener), so this is only done on the JavaFX thread, not in build_plot().
+     */
+    private void point_material(PlotBuild pb, int i, Node n){
+        PhongMaterial m = Colormap.material(pb.colours[i], pb.alphas[i]);
+        Shape3D sh = (Shape3D) n;
+        if (sh.getMaterial()!=m)
+            sh.setMaterial(m);
+    }
+    
+    /**
+     * Creates the 2D label of a point (z4), at the same place as point_label().
+     */
+    private LabelOverlay.Label overlay_label(PlotBuild pb, int i){
+        double[][] array = pb.array;
+        double tmpsize_ = pb.sizes[i]/2;
+        if (pb.pointtype==0 || pb.pointtype==3) // Sphere
+            tmpsize_ = pb.sizes[i];
+        return new LabelOverlay.Label(LabelOverlay.POINTS, point_labels, array[0][i]*AXIS_LENGTH, 
+                array[2][i]*AXIS_LENGTH+tmpsize_+2, array[1][i]*AXIS_LENGTH, pb.data.text(i, pb.indexes[6]), null);
+    }
+    
+    /**
+     * Creates the label of a point (z4), on the JavaFX thread (see show_plot()).
+     */
+    private Node point_label(PlotBuild pb, int i){
+        double[][] array = pb.array;
+        double tmpsize = pb.sizes[i];
+        
+        // Label text obect using a FXyz mesh
+        GlyphText tm = new GlyphText(pb.data.text(i, pb.indexes[6]), "Liberation Serif", 25); 
+        System.out.println(i+" "+array[6][i]);
+        tm.setTextureModeNone(Color.BLACK);
+        tm.setScaleX(0.8*pb.label_size);  tm.setScaleY(0.8*pb.label_size);
+        tm.setTranslateX(-tm.getLayoutBounds().getCenterX());
+        tm.setTranslateY(-tm.getLayoutBounds().getCenterY());                
+
+        // Enclose in an invisible border (for now)
+        Rectangle re = new Rectangle();
+        re.setFill(Color.WHITESMOKE);
+        re.setWidth(tm.getLayoutBounds().getWidth());
+        re.setHeight(tm.getLayoutBounds().getHeight());  
+        re.setTranslateX(-tm.getLayoutBounds().getWidth()/2);
+        re.setTranslateY(-tm.getLayoutBounds().getHeight()/2);
+        re.setTranslateZ(3); // workaround for overlapping surfaces
+        re.setScaleX(pb.label_size);  re.setScaleY(pb.label_size);
+        re.setVisible(false);
+
+        // Create a group for transformations (the shared label rotations are added when shown)
+        Group tgr = new Group();                
+        tgr.getChildren().addAll(tm, re);                
+        tgr.setTranslateX(array[0][i]*AXIS_LENGTH);
+        tgr.setTranslateZ(array[1][i]*(AXIS_LENGTH));
+        double tmpsize_ = tmpsize/2;
+        if (pb.pointtype==0 || pb.pointtype==3) // Sphere
+            tmpsize_ = tmpsize;
+        tgr.setTranslateY(array[2][i]*AXIS_LENGTH+tmpsize_+tm.getLayoutBounds().getHeight()/2+2);
+        return tgr;
+    }
+    
+    /**
+     * The inputs of the ticks of an axis (column, log scale, range, and the category 
+     * labels if any), for reusing them while they are the same.
+     */
+    private static final class TickKey {
+        final int column;
+        final boolean log;
+        final double min, max;
+        final int cardinality;
+        final Map<String, Integer> categories; // (compared by identity, null for numerical ticks)
+        
+        TickKey(PlotBuild pb, int i){
+            column = pb.indexes[i];
+            log = pb.logscales[i];
+            min = pb.mins[i];
+            max = pb.maxs[i];
+            cardinality = column==-1? 0 : pb.stringtypes.get(column).size();
+            categories = cardinality>1 && cardinality<150? pb.stringtypes.get(column) : null;
+        }
+        
+        @Override
+        public boolean equals(Object o){
+            if (!(o instanceof TickKey))
+                return false;
+            TickKey k = (TickKey) o;
+            return column==k.column && log==k.log && Double.compare(min, k.min)==0 && Double.compare(max, k.max)==0
+                && cardinality==k.cardinality && categories==k.categories;
+        }
+        
+        @Override
+        public int hashCode(){
+            return Objects.hash(column, log, min, max, cardinality, System.identityHashCode(categories));
+        }
+    }
+    
+    // Computed tick candidates per axis inputs, and the inputs of the drawn ticks per axis
+    static final int TICK_CACHE_SIZE = 32;
+    private final Map<TickKey, TreeMap<Double, String>> tick_cache = new LinkedHashMap<TickKey, TreeMap<Double, String>>(TICK_CACHE_SIZE, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TickKey, TreeMap<Double, String>> eldest){
+            return size()>TICK_CACHE_SIZE;
+        }
+    };
+    private final TickKey[] tick_keys = new TickKey[3];
+    
+    /**
+     * @return the candidate ticks (position and text) of a spatial dimension, as 
+     * category labels or round numbers
+     */
+    private TreeMap<Double, String> tick_candidates(PlotBuild pb, int i){
+        TreeMap<Double, String> candidates = new TreeMap<Double, String>();
+        int[] indexes = pb.indexes;
+        double min = pb.mins[i], max = pb.maxs[i];
+        
+        double minor_tic = Math.pow(10, Math.floor(Math.log10(Math.abs(max-min))-1));
+        double major_tic = 10 * minor_tic;
+
+        System.out.println(min+" "+max+" "+minor_tic+" "+ major_tic+" "+ major_tic*Math.floor(min/major_tic));
+
+        int stringcard = pb.stringtypes.get(indexes[i]).size();                
+        if (stringcard>1 && stringcard<150){
+            // Label ticks
+            for (String s: pb.stringtypes.get(indexes[i]).keySet()){
+                candidates.put(pb.stringtypes.get(indexes[i]).get(s)/(stringcard-1.0), s);
+            }                    
+        } else {                    
+            // Numerical ticks
+            NumberFormat df = DecimalFormat.getInstance();
+            df.setMinimumFractionDigits(0);
+            df.setMaximumFractionDigits((int) (-Math.min(0,Math.log(minor_tic))));
+            df.setRoundingMode(RoundingMode.HALF_EVEN);
+
+            for (double tic = major_tic*Math.floor(min/major_tic); tic<=max; tic+= major_tic){
+                double pos = (tic-min)/(max-min);
+                if (!(pos>=0 && pos<=1))
+                    continue;
+                if (pb.logscales[i]){  
+                    candidates.put(pos, "E"+df.format(tic));
+                }
+                else 
+                    candidates.put(pos, df.format(tic));
             }
-            
-            if ((indexes[6]!=-1) && (!Double.isNaN(array[6][i]))) {
-                // Label text obect using a FXyz mesh
-                Text3DMesh tm = new Text3DMesh(child.datasetStringed.get(i)[indexes[6]].toString(), "Liberation Serif", 25, true); 
-                System.out.println(i+" "+array[6][i]);
-                tm.setHeight(0);
-                tm.setTextureModeNone(Color.BLACK);
-                tm.setScaleX(0.8*(int)child.z4cb3.getValue()/12.0);  tm.setScaleY(0.8*(int)child.z4cb3.getValue()/12.0);
-                tm.setTranslateX(-tm.getLayoutBounds().getCenterX());
-                tm.setTranslateY(-tm.getLayoutBounds().getCenterY());                
-                
-                // Enclose in an invisible border (for now)
-                Rectangle re = new Rectangle();
-                re.setFill(Color.WHITESMOKE);
-                re.setWidth(tm.getLayoutBounds().getWidth());
-                re.setHeight(tm.getLayoutBounds().getHeight());  
-                re.setTranslateX(-tm.getLayoutBounds().getWidth()/2);
-                re.setTranslateY(-tm.getLayoutBounds().getHeight()/2);
-                re.setTranslateZ(3); // workaround for overlapping surfaces
-                re.setScaleX((int)child.z4cb3.getValue()/12.0);  re.setScaleY((int)child.z4cb3.getValue()/12.0);
-                re.setVisible(false);
-                
-                // Create a group for transformations
-                Group tgr = new Group();                
-                tgr.getChildren().addAll(tm, re);                
+        }
+        return candidates;
+    }
+    
+    /**
+     * Swaps a finished build into the scene (or applies it to the shown nodes), and 
+     * updates the tics, labels and shadows if needed (on the JavaFX thread).
+     */
+    private void show_plot(PlotBuild pb) {
+        double[][] array = pb.array;
+        int[] indexes = pb.indexes;
+        boolean[] logscales = pb.logscales;
+        
+        // For every spatial dimension (0, 1, 2), new tics only if the axis has changed
+        boolean[] redraw = new boolean[3];
+        for (int i=0; i<3 && (pb.dirty&CH_TICKS)!=0; i++){
+            int ax=i; if (i!=0) ax=3-i; // (applied after y <-> z renaming issue)
+            TickKey key = new TickKey(pb, i);
+            if (key.equals(tick_keys[ax]))
+                continue; // (the drawn ticks are kept)
+            tick_keys[ax] = key;
+            TreeMap<Double, String> candidates = tick_cache.get(key);
+            if (candidates==null){
+                candidates = tick_candidates(pb, i);
+                tick_cache.put(key, candidates);
+            }
+            tic_candidates.get(ax).clear();
+            tic_candidates.get(ax).putAll(candidates);
+            redraw[ax] = true;
+        }
+        if (redraw[0] || redraw[1] || redraw[2])
+            drawTics(redraw);
+        
+        // Swap the points (or update them in place) and the labels
+        if (in_place(pb)){
+            update_points(pb);
+        } else {
+            if (pb.pool!=null){
+                List<Node> reused = pb.pool.subList(0, Math.min(pb.pool.size(), pb.count));
+                for (int i=0; i<reused.size(); i++)
+                    point_node(pb, i, reused.get(i));
+                pb.points.getChildren().addAll(0, reused);
+            }
+            points = pb.points;
+            if (pb.pointtype<3)
+                for (int i=0; i<pb.count; i++)
+                    point_material(pb, i, points.getChildren().get(i));
+            for (Node n: pb.nodes)
+                if (n instanceof PointCloud)
+                    ((PointCloud) n).attach();
+            plotw.getChildren().setAll(points);
+            // (the 3D view is transparent over the splats)
+            splats.set_points(pb.splat_positions, pb.splat_sizes, pb.colours, pb.alphas);
+            view.setFill(pb.pointtype==SPLAT? Color.TRANSPARENT : Color.WHITE);
+        }
+        if (pb.labels_built){
+            // (the 3D labels share glyph meshes and materials with the shown ones, see GlyphText)
+            for (int i: pb.labelled)
+                pb.labels.add(point_label(pb, i));
+            for (Node tgr: pb.labels)
                 tgr.getTransforms().addAll(label_heading, label_roll);
-                tgr.setTranslateX(array[0][i]*AXIS_LENGTH);
-                tgr.setTranslateZ(array[1][i]*(AXIS_LENGTH));
-                double tmpsize_ = tmpsize/2;
-                if (pointtype==0) // Sphere
-                    tmpsize_ = tmpsize;
-                tgr.setTranslateY(array[2][i]*AXIS_LENGTH+tmpsize_+tm.getLayoutBounds().getHeight()/2+2);
-                point_labels.getChildren().add(tgr);
+            point_labels.getChildren().setAll(pb.labels);
+            label_overlay.set_scale(LabelOverlay.POINTS, pb.label_size);
+            label_overlay.set(LabelOverlay.POINTS, pb.overlay);
+        }
+        
+        // Keep what is needed for building the shadows later
+        boolean projections_stale = !in_place(pb) || (pb.dirty&(CH_SIZE|CH_COLOUR|CH_ALPHA))!=0;
+        if (projections_stale){
+            for (int ax=0; ax<point_shadows.length; ax++){
+                point_shadows[ax].getChildren().clear();
+                shadows_built[ax] = false;
             }
-            count += 1;
-            if (count==50000) break; // Impose a hard limit for the number of data points for now
         }
-        System.out.println(child.dataset.size());
-        plotw.getChildren().clear();
-        plotw.getChildren().add(points);
+        shadow_array = array;
+        shadow_sizes = pb.sizes;
+        shadow_colours = pb.colours;
+        shadow_alphas = pb.alphas;
+        shadow_count = pb.count;
+        shadow_pointtype = pb.pointtype;
+        shadow_z3 = indexes[5]!=-1;
+        if (projections_stale)
+            invalidate_projections();
+        ensure_shadows();
         
         // Place grids to the front to allow transparency
         for (int ax=0; ax<gridLinesGroups.length; ax++){
@@ -1389,76 +1877,175 @@ public class Juniper extends Application {
             world.getChildren().add(gridSurfGroups[ax]);           
         }   
         
-        world.getChildren().remove(fog);
-        world.getChildren().add(fog);
-        
         // (seelabels already does that)
-        if (depth_colormap) {
-            depth_color();
-        }                
+        shown_plot = pb;
+        depth_color();
+        update_lod();
+        declutter_labels();
+        wake();
         draw=false; 
     }
     
     /**
-     * Comparator implementation that sorts the visual elements based on their
-     * distance as a workaround for JavaFX's inability to show transparency 
-     * correctly for objects created later. 
-     * see: https://stackoverflow.com/questions/29308397/javafx-3d-transparency
+     * Applies new sizes, colours or transparencies to the shown points.
      */
-    public class depth_tester implements Comparator<Node> {
-        
-        public static double get_distance_from_cam (Node n, Xform camera){            
-            return Math.sqrt(get_distance_from_cam_no_sqrt(n, camera));
+    private void update_points(PlotBuild pb){
+        if (pb.pointtype==SPLAT){ // (the same points, with other attributes)
+            pb.splat_positions = pb.base.splat_positions;
+            pb.splat_sizes = pb.base.splat_sizes;
         }
-        
-        public static double get_distance_from_cam_no_sqrt (Node n, Xform camera){
-            double distance_from_cam = Math.pow(n.getLocalToSceneTransform().getTx() - camera.getBoundsInParent().getCenterX(),2);
-            distance_from_cam += Math.pow(n.getLocalToSceneTransform().getTz()- camera.getBoundsInParent().getCenterZ(),2);
-            distance_from_cam += Math.pow(n.getLocalToSceneTransform().getTy()- camera.getBoundsInParent().getCenterY(),2);
-            return distance_from_cam;
+        if ((pb.dirty&(CH_SIZE|CH_COLOUR|CH_ALPHA))==0)
+            return;
+        if (pb.pointtype==SPLAT){
+            if ((pb.dirty&CH_SIZE)!=0){
+                pb.splat_sizes = new float[pb.count];
+                for (int j=0; j<pb.count; j++)
+                    pb.splat_sizes[j] = (float) pb.sizes[j];
+                splats.set_sizes(pb.splat_sizes);
+            }
+            if ((pb.dirty&(CH_COLOUR|CH_ALPHA))!=0)
+                splats.recolour(pb.colours, pb.alphas);
+            return;
         }
-        
-        public int compare(Node a, Node b)
-        {            
-            double distance_from_cam_a = get_distance_from_cam_no_sqrt(a, cameraXform);
-            double distance_from_cam_b = get_distance_from_cam_no_sqrt(b, cameraXform);
-            return (distance_from_cam_a>distance_from_cam_b?-1:1);
+        List<Node> nodes = points.getChildren();
+        for (int i=0; i<nodes.size(); i++){
+            Node n = nodes.get(i);
+            if (n instanceof PointCloud){
+                PointCloud pc = (PointCloud) n;
+                if ((pb.dirty&CH_SIZE)!=0){
+                    float[] sizes = new float[pc.size()];
+                    for (int j=0; j<sizes.length; j++)
+                        sizes[j] = (float) pb.sizes[j];
+                    pc.set_sizes(sizes);
+                }
+                if ((pb.dirty&(CH_COLOUR|CH_ALPHA))!=0)
+                    pc.recolour(pb.colours.clone(), pb.alphas.clone());
+            } else if (i<pb.count){
+                point_node(pb, i, n);
+                point_material(pb, i, n);
+            }
         }
     }
-
-    Comparator cmpr = new depth_tester();
     
     /**
-     * Function that uses the comparator for the transparency workaround. It first
-     * sorts the elements inside a list by pointers. Then it removes them temporarily 
-     * from their group and inserts them back in order so that their order is adjusted.
-     */    
-    private void depth_sort(Xform[] l){
-               
-        List<Object> ar = new ArrayList<Object>();
-        List<Integer> visible = new ArrayList<Integer>();
-        for (int i=0; i<l.length; i++)
-            if (l[i]!=null && l[i].isVisible()){                
-                visible.add(i);
-                ar.addAll(l[i].getChildren());
+     * Builds the light paths (or the projections) of the plotted points on the planes
+     * that have become visible since the last plot(). The geometry of each plane is 
+     * created once per plot, so that toggling the shadows does not require replotting.
+     */
+    void ensure_shadows(){
+        for (int ax=0; ax<point_shadows.length; ax++){
+            if (point_shadows[ax].isVisible() && !shadows_built[ax]){
+                build_shadows(ax);
+                shadows_built[ax] = true;
             }
-        
-        try{
-            ar.sort(cmpr);
-        }catch(Exception e){}
-           
-        for (Object o:ar){
-            Node n = (Node)o;  
-            
-            for (int i:visible)
-                {
-                if (l[i].getChildren().contains(n)){
-                    l[i].getChildren().remove(n);
-                    l[i].getChildren().add(n);
-                }
+            if (point_shadow_projections[ax].isVisible() && !projections_built[ax]){
+                build_projection(ax);
+                projections_built[ax] = true;
             }
-        }        
-    }    
+        }
+    }
+    
+    private void build_shadows(int ax){
+        if (shadow_array==null || shadow_pointtype==2) // (no light paths for bars)
+            return;
+        boolean box = shadow_pointtype==1 || shadow_pointtype==4;
+        point_shadows[ax].getChildren().setAll(new LightPaths(ax, shadow_array, shadow_sizes, shadow_count, box, AXIS_LENGTH, shadowMaterial));
+    }
+    
+    /**
+     * Shows the raster of the plane of a projection group, which is rasterised in the 
+     * background on first use (and then shared by the opposite side of the plot).
+     */
+    private void build_projection(int ax){
+        if (shadow_array==null || shadow_pointtype==2) // (no projections for bars)
+            return;
+        int plane = ProjectionRaster.plane(ax);
+        if (projection_materials[plane].getDiffuseMap()!=null){
+            point_shadow_projections[ax].getChildren().setAll(ProjectionRaster.quad(ax, AXIS_LENGTH, projection_materials[plane]));
+            return;
+        }
+        if (rasters_pending[plane])
+            return;
+        rasters_pending[plane] = true;
+        
+        // Snapshot of the plotted attributes (these arrays are replaced, not changed, by later plots)
+        final long generation = projection_generation;
+        final double[][] array = shadow_array;
+        final int count = shadow_count;
+        final boolean round = shadow_pointtype==0 || shadow_pointtype==3 || shadow_pointtype==SPLAT;
+        final int[] colours = shadow_colours, alphas = shadow_z3? shadow_alphas : null;
+        final int[] palette = ProjectionRaster.palette();
+        final boolean density = projection_density;
+        final double[] sizes = new double[count];
+        for (int i=0; i<count; i++)
+            sizes[i] = shadow_sizes[i]/AXIS_LENGTH;
+        projection_rasteriser.submit(() -> {
+            ProjectionRaster raster = density? new ProjectionRaster(plane, array, count, palette)
+                                             : new ProjectionRaster(plane, array, sizes, count, round, colours, palette, alphas);
+            Platform.runLater(() -> {
+                if (generation!=projection_generation)
+                    return;
+                rasters_pending[plane] = false;
+                projection_materials[plane].setDiffuseMap(raster.image());
+                for (int a=0; a<point_shadow_projections.length; a++)
+                    if (projections_built[a] && ProjectionRaster.plane(a)==plane)
+                        point_shadow_projections[a].getChildren().setAll(ProjectionRaster.quad(a, AXIS_LENGTH, projection_materials[plane]));
+            });
+        });
+    }
+    
+    /**
+     * Drops the projection rasters (e.g. after a change of the data, palette or mode), 
+     * so that the visible ones are rasterised again.
+     */
+    void invalidate_projections(){
+        projection_generation++;
+        for (int p=0; p<projection_materials.length; p++){
+            rasters_pending[p] = false;
+            projection_materials[p].setDiffuseMap(null);
+            projection_materials[p].setDiffuseColor(projection_colour());
+        }
+        for (int ax=0; ax<point_shadow_projections.length; ax++){
+            point_shadow_projections[ax].getChildren().clear();
+            projections_built[ax] = false;
+        }
+    }
+    
+    /**
+     * The projections have the transparency of their points with z3 transparency (in 
+     * the raster), otherwise the shadow opacity, which is common to all (in the material).
+     */
+    private Color projection_colour(){
+        return Color.color(1, 1, 1, shadow_z3 && !projection_density? 1 : shadow_opacity);
+    }
+    
+    /**
+     * Switches between the projections of the points and their density (2D histogram).
+     */
+    void set_projection_density(boolean density){
+        if (density==projection_density)
+            return;
+        projection_density = density;
+        invalidate_projections();
+        ensure_shadows();
+    }
+    
+    /**
+     * Changes the opacity of the shadows and of the projections, in the shared materials.
+     */
+    void set_shadow_opacity(double opacity){
+        shadow_opacity = opacity;
+        shadowMaterial.setDiffuseColor(Color.color(0.5,0.5,0.5,opacity));
+        for (PhongMaterial m: projection_materials)
+            m.setDiffuseColor(projection_colour());
+        
+        // The point transparency (z3) is overridden from now on, so the projections are rasterised without it
+        if (shadow_z3){
+            shadow_z3 = false;
+            invalidate_projections();
+            ensure_shadows();
+        }
+    }
     
     /**
      * Classical JavaFX code for handling mouse events to rotate the scene etc.
@@ -1500,7 +2087,7 @@ public class Juniper extends Application {
                    cameraXform.rx.setAngle(cameraXform.rx.getAngle() +
                        mouseDeltaY*modifierFactor*modifier*ROTATION_SPEED);  // -
                    rotation_remainder=Math.max(0.00001,mouseDeltaX*modifierFactor*modifier*ROTATION_SPEED);
-                   last_time = System.currentTimeMillis();
+                   spin_restarted = true;
                    //System.out.println(cameraXform.rx.getAngle()+", "+cameraXform.ry.getAngle());
                 }
                 else if (me.isSecondaryButtonDown()) {
@@ -1514,7 +2101,11 @@ public class Juniper extends Application {
                    cameraXform2.t.setY(cameraXform2.t.getY() + 
                       mouseDeltaY*MOUSE_SPEED*modifier*TRACK_SPEED);  
                 }
-
+                governor.interact(System.nanoTime());
+                update_lod();
+                update_tics();
+                declutter_labels();
+                wake();
             }
         }); // setOnMouseDragged
         
@@ -1527,13 +2118,19 @@ public class Juniper extends Application {
                     CAMERA_DISTANCE -= 20;
                 }
                 camera.setTranslateZ(CAMERA_DISTANCE);
+                governor.interact(System.nanoTime());
+                update_lod();
+                update_tics();
+                declutter_labels();
+                wake();
             }
         });
     } //handleMouse
     
     /**
      * Keyboard-based navigation. It is undocumented, but it is left as a placeholder
-     * for future functionality.
+     * for future functionality. (V switches to the next colour palette, L between
+     * 2D and 3D labels, and B to the next budget of point labels.)
      */
     private void handleKeyboard (Scene scene, final Node roo1) {
 
@@ -1551,9 +2148,29 @@ public class Juniper extends Application {
                         axisGroup.setVisible(!axisGroup.isVisible());
                         axismGroup.setVisible(!axismGroup.isVisible());
                         break;
-                    case V:                       
+                    case L: // Switch between 2D and 3D (mesh) labels
+                       overlay_labels = !overlay_labels;
+                       drawTics();
+                       plot();
+                       break;
+                    case B: // Next budget of point labels
+                       int b = 0;
+                       while (b<LABEL_BUDGETS.length-1 && LABEL_BUDGETS[b]<=label_declutter.budget())
+                           b++;
+                       if (LABEL_BUDGETS[b]<=label_declutter.budget())
+                           b = 0;
+                       label_declutter.set_budget(LABEL_BUDGETS[b]);
+                       label_overlay.set_budget(LABEL_BUDGETS[b]);
+                       declutter_labels();
+                       break;
+                    case V: // Next colour palette
+                       Colormap.set_palette((Colormap.palette()+1)%Colormap.PALETTES.length);
+                       PointCloud.material();
+                       invalidate_projections();
+                       ensure_shadows();
                        break;
                } // switch
+               wake();
             } // handle()
         });  // setOnKeyPressed
     }  //  handleKeyboard()
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.Arrays;
+
+/**
+ * Greedy placement of labels in screen space. The labels are offered in order of
+ * priority, and a label is accepted only if its box does not overlap any accepted one
+ * and the budget of labels (per pass) is not exhausted. The accepted boxes are kept
+ * in a uniform grid over the viewport, so that each test only looks at the boxes of
+ * the cells that it covers.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class LabelDeclutter {
+
+    public static final double CELL = 48;     // grid cell side in pixels
+    public static final double PADDING = 2;   // minimum gap between labels in pixels
+
+    private int budget;
+    private int columns, rows;
+    private int[] heads = new int[0];         // first entry per cell (-1 for none)
+    private int[] next = new int[64];         // next entry in the same cell
+    private int[] box_of = new int[64];       // box of every entry
+    private double[] boxes = new double[64];  // x0, y0, x1, y1 per box
+    private int entries, count, placed;
+
+    /**
+     * @param budget max labels accepted through place() per pass
+     */
+    public LabelDeclutter(int budget){
+        this.budget = budget;
+    }
+
+    public int budget(){
+        return budget;
+    }
+
+    public void set_budget(int budget){
+        this.budget = budget;
+    }
+
+    /**
+     * Starts a new pass over a viewport.
+     */
+    public void reset(double width, double height){
+        columns = Math.max(1, (int) Math.ceil(width/CELL));
+        rows = Math.max(1, (int) Math.ceil(height/CELL));
+        if (heads.length<columns*rows)
+            heads = new int[columns*rows];
+        Arrays.fill(heads, 0, columns*rows, -1);
+        entries = count = placed = 0;
+    }
+
+    /**
+     * @return the number of labels accepted in this pass
+     */
+    public int placed(){
+        return placed;
+    }
+
+    /**
+     * Offers a label (box with its top-left corner at x, y), which is accepted if the
+     * budget allows it and it does not overlap an accepted box.
+     *
+     * @return true if accepted
+     */
+    public boolean place(double x, double y, double width, double height){
+        if (placed>=budget)
+            return false;
+        double x0 = x-PADDING, y0 = y-PADDING, x1 = x+width+PADDING, y1 = y+height+PADDING;
+        if (collides(x0, y0, x1, y1))
+            return false;
+        add(x0, y0, x1, y1);
+        placed++;
+        return true;
+    }
+
+    /**
+     * Adds a box that is always shown (e.g. a tick label), regardless of overlaps and
+     * without using the budget, so that other labels avoid it.
+     */
+    public void block(double x, double y, double width, double height){
+        add(x-PADDING, y-PADDING, x+width+PADDING, y+height+PADDING);
+    }
+
+    private boolean collides(double x0, double y0, double x1, double y1){
+        int c0 = column(x0), c1 = column(x1), r0 = row(y0), r1 = row(y1);
+        for (int r=r0; r<=r1; r++){
+            for (int c=c0; c<=c1; c++){
+                for (int e=heads[r*columns+c]; e!=-1; e=next[e]){
+                    int b = box_of[e]*4;
+                    if (x0<boxes[b+2] && boxes[b]<x1 && y0<boxes[b+3] && boxes[b+1]<y1)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void add(double x0, double y0, double x1, double y1){
+        if (boxes.length<(count+1)*4)
+            boxes = Arrays.copyOf(boxes, boxes.length*2);
+        boxes[count*4] = x0; boxes[count*4+1] = y0; boxes[count*4+2] = x1; boxes[count*4+3] = y1;
+        int c0 = column(x0), c1 = column(x1), r0 = row(y0), r1 = row(y1);
+        for (int r=r0; r<=r1; r++){
+            for (int c=c0; c<=c1; c++){
+                if (next.length<=entries){
+                    next = Arrays.copyOf(next, next.length*2);
+                    box_of = Arrays.copyOf(box_of, box_of.length*2);
+                }
+                next[entries] = heads[r*columns+c];
+                box_of[entries] = count;
+                heads[r*columns+c] = entries++;
+            }
+        }
+        count++;
+    }
+
+    // (boxes partly off the viewport are clamped to the border cells)
+    private int column(double x){
+        return Math.min(columns-1, Math.max(0, (int) (x/CELL)));
+    }
+
+    private int row(double y){
+        return Math.min(rows-1, Math.max(0, (int) (y/CELL)));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.PerspectiveCamera;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.transform.NonInvertibleTransformException;
+
+/**
+ * 2D layer above the 3D view for the tick labels and the per-point (z4) labels, as a
+ * lightweight alternative to one Text3DMesh (with its triangulated glyphs) per label.
+ * Every label is a plain Text node anchored to a point in the local coordinates of
+ * a 3D node. The anchors are projected to the viewport whenever the view changes (with
+ * one projection per anchor node), so the labels always face the camera.
+ * The point labels are also decluttered: they are offered in their order (of priority)
+ * to a LabelDeclutter, after the tick labels, and the overlapping ones are hidden.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class LabelOverlay extends Pane {
+
+    public static final int TICKS = 0, POINTS = 1;   // kinds of labels
+    public static double FONT_SIZE = 14;             // (at scale 1)
+    public static int BUDGET = 250;                  // default max point labels shown
+
+    /**
+     * A label, which can also be created before it is added (e.g. on another thread).
+     */
+    public static class Label {
+        final int kind;
+        final Node space;         // the anchor is in the local coordinates of this node
+        final double x, y, z;
+        final Node rotation;      // (optional) node whose rotation is followed, e.g. vertical ticks
+        final Text text;
+        double width, height;
+
+        public Label(int kind, Node space, double x, double y, double z, String text, Node rotation){
+            this.kind = kind;
+            this.space = space;
+            this.x = x; this.y = y; this.z = z;
+            this.rotation = rotation;
+            this.text = new Text(text);
+            this.text.setTextOrigin(VPos.CENTER);
+            this.text.setVisible(false);
+        }
+    }
+
+    private final List<List<Label>> labels = new ArrayList<List<Label>>();
+    private final double[] scales = {1, 1};
+    private final boolean[] emphasis = {false, true};
+    private Map<Node, CameraProjection> projections = new IdentityHashMap<Node, CameraProjection>();
+    private Map<Node, CameraProjection> last_projections = new IdentityHashMap<Node, CameraProjection>();
+    private final LabelDeclutter declutter = new LabelDeclutter(BUDGET);
+    private boolean stale = true;
+    private final double[] xy = new double[2];
+
+    public LabelOverlay(){
+        setMouseTransparent(true);
+        setPickOnBounds(false);
+        labels.add(new ArrayList<Label>());
+        labels.add(new ArrayList<Label>());
+    }
+
+    /**
+     * Replaces all labels of a kind (for point labels, in order of priority).
+     */
+    public void set(int kind, List<Label> list){
+        stale = true;
+        getChildren().removeAll(texts(labels.get(kind)));
+        labels.set(kind, new ArrayList<Label>(list));
+        for (Label l: list)
+            style(l);
+        getChildren().addAll(texts(list));
+    }
+
+    private static List<Text> texts(List<Label> list){
+        List<Text> t = new ArrayList<Text>(list.size());
+        for (Label l: list)
+            t.add(l.text);
+        return t;
+    }
+
+    /**
+     * Label size of a kind (1 for the default size).
+     */
+    public void set_scale(int kind, double scale){
+        if (scales[kind]==scale)
+            return;
+        scales[kind] = scale;
+        stale = true;
+        for (Label l: labels.get(kind))
+            style(l);
+    }
+
+    /**
+     * Darker text for a kind (as the labels with borders in the 3D mode).
+     */
+    public void set_emphasis(int kind, boolean on){
+        emphasis[kind] = on;
+        for (Label l: labels.get(kind))
+            style(l);
+    }
+
+    /**
+     * Max number of point labels shown at once.
+     */
+    public void set_budget(int budget){
+        declutter.set_budget(budget);
+        stale = true;
+    }
+
+    public int budget(){
+        return declutter.budget();
+    }
+
+    private void style(Label l){
+        l.text.setFont(Font.font("Liberation Serif", FONT_SIZE*scales[l.kind]));
+        if (l.kind==TICKS)
+            l.text.setFill(emphasis[TICKS]? Color.DARKGRAY : Color.LIGHTGRAY);
+        else
+            l.text.setFill(emphasis[POINTS]? Color.BLACK : Color.DARKGRAY);
+        l.width = l.text.getLayoutBounds().getWidth();
+        l.height = l.text.getLayoutBounds().getHeight();
+    }
+
+    /**
+     * Moves the labels to the projections of their anchors and declutters the point
+     * labels (to be called on every pulse, but only done when the view has changed).
+     *
+     * @param camera the camera of the 3D view
+     * @param width width of the 3D view
+     * @param height height of the 3D view
+     */
+    public void update(PerspectiveCamera camera, double width, double height){
+        Map<Node, CameraProjection> swap = last_projections;
+        last_projections = projections;
+        projections = swap;
+        projections.clear();
+        boolean changed = stale;
+        for (List<Label> list: labels){
+            for (Label l: list){
+                if (l.rotation!=null && l.rotation.getRotate()!=l.text.getRotate())
+                    changed = true;
+                if (projections.containsKey(l.space))
+                    continue;
+                CameraProjection p = null;
+                if (tree_visible(l.space)){
+                    try {
+                        p = new CameraProjection(camera, l.space, width, height);
+                    } catch (NonInvertibleTransformException e) { }
+                }
+                projections.put(l.space, p); // (null if hidden)
+                changed |= !last_projections.containsKey(l.space) || !CameraProjection.same(p, last_projections.get(l.space));
+            }
+        }
+        if (!changed)
+            return;
+        stale = false;
+
+        declutter.reset(width, height);
+        for (Label l: labels.get(TICKS))
+            if (move(l, width, height))
+                declutter.block(l.text.getTranslateX(), xy[1]-l.height/2, l.width, l.height);
+        for (Label l: labels.get(POINTS))
+            if (move(l, width, height))
+                l.text.setVisible(declutter.place(l.text.getTranslateX(), xy[1]-l.height/2, l.width, l.height));
+    }
+
+    /**
+     * Moves a label to the projection of its anchor (in xy), and hides it if it is off the view.
+     *
+     * @return true if shown
+     */
+    private boolean move(Label l, double width, double height){
+        CameraProjection p = projections.get(l.space);
+        boolean visible = p!=null && p.project(l.x, l.y, l.z, xy)
+                && xy[0]+l.width>=0 && xy[0]-l.width<=width && xy[1]+l.height>=0 && xy[1]-l.height<=height;
+        l.text.setVisible(visible);
+        if (l.rotation!=null)
+            l.text.setRotate(l.rotation.getRotate());
+        if (!visible)
+            return false;
+        l.text.setTranslateX(xy[0]-l.width/2);
+        l.text.setTranslateY(xy[1]);
+        return true;
+    }
+
+    /**
+     * @return true if a node and all its ancestors are visible
+     */
+    private static boolean tree_visible(Node n){
+        for (; n!=null; n=n.getParent())
+            if (!n.isVisible())
+                return false;
+        return true;
+    }
+}
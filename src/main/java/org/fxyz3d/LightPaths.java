@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.Arrays;
+import javafx.geometry.Point3D;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * The light paths of all points towards one side of the plot, as a single mesh. Every
+ * path is a thin beam from the side to its point, made of two crossed quads (instead of
+ * a tessellated Cylinder or Box per point), so that a direction costs one node and its
+ * buffers. For the transparency, the quads are drawn from the furthest path to the
+ * nearest, which is kept up to date by reordering the faces (see sort()).
+ *
+ * @author Philippos Papaphilippou
+ */
+public class LightPaths extends MeshView {
+
+    // Axis of the paths, and position of the side (0 or the axis length), per direction
+    private static final int[] AXES = {1, 0, 2, 0, 2};    // (Y for the floor, X and Z for the walls)
+    private static final boolean[] FAR = {false, false, false, true, true};
+
+    private final int count;
+    private final float[] centres;   // x, y, z per path
+    private final int[] faces;       // faces of the paths, in the current order
+    private int[] order;             // path indexes, from the furthest
+    private long[] keys = new long[0];
+
+    /**
+     * @param ax the direction (as in Juniper.point_shadows)
+     * @param array normalised x, z (depth) and y coordinates of the points, as in Juniper
+     * @param sizes point sizes
+     * @param count number of points
+     * @param box true for square points (which the paths do not enter), otherwise round
+     * @param length the axis length
+     * @param material the (shared) material of the paths
+     */
+    public LightPaths(int ax, double[][] array, double[] sizes, int count, boolean box, double length, PhongMaterial material){
+        int axis = AXES[ax];
+        int e1 = (axis+1)%3, e2 = (axis+2)%3;   // the other two axes, across the paths
+        float[] points = new float[count*8*3];
+        centres = new float[count*3];
+        int valid = 0;
+        double[] p0 = new double[3], p1 = new double[3];
+        for (int i=0; i<count; i++){
+            p1[0] = array[0][i]*length; p1[1] = array[2][i]*length; p1[2] = array[1][i]*length;
+            if (Double.isNaN(p1[0]) || Double.isNaN(p1[1]) || Double.isNaN(p1[2]) || Double.isNaN(sizes[i]))
+                continue;
+            double half = box? sizes[i]/2 : sizes[i];
+            p0[0] = p1[0]; p0[1] = p1[1]; p0[2] = p1[2];
+            p0[axis] = FAR[ax]? length : 0;
+            if (box) // (up to the surface of the point)
+                p1[axis] += p0[axis]<p1[axis]? -half : half;
+
+            int v = valid*8*3;
+            for (int q=0; q<2; q++){
+                int across = q==0? e1 : e2;
+                for (int k=0; k<4; k++){
+                    double[] end = k<2? p0 : p1;
+                    double offset = (k==0 || k==3)? -half : half;
+                    for (int d=0; d<3; d++)
+                        points[v+d] = (float) (end[d]+(d==across? offset:0));
+                    v += 3;
+                }
+            }
+            for (int d=0; d<3; d++)
+                centres[valid*3+d] = (float) ((p0[d]+p1[d])/2);
+            valid++;
+        }
+        this.count = valid;
+
+        faces = new int[valid*4*6];
+        order = new int[valid];
+        for (int k=0; k<valid; k++)
+            order[k] = k;
+        write_faces();
+
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getPoints().setAll(points, 0, valid*8*3);
+        mesh.getTexCoords().setAll(0, 0);
+        mesh.getFaces().setAll(faces);
+        setMesh(mesh);
+        setCullFace(CullFace.NONE);
+        setMaterial(material);
+    }
+
+    /**
+     * @return the number of paths
+     */
+    public int size(){
+        return count;
+    }
+
+    private void write_faces(){
+        int f = 0;
+        for (int k=0; k<count; k++){
+            int v = order[k]*8;
+            for (int q=0; q<2; q++, v+=4){
+                faces[f++] = v;   faces[f++] = 0; faces[f++] = v+1; faces[f++] = 0; faces[f++] = v+2; faces[f++] = 0;
+                faces[f++] = v;   faces[f++] = 0; faces[f++] = v+2; faces[f++] = 0; faces[f++] = v+3; faces[f++] = 0;
+            }
+        }
+    }
+
+    /**
+     * Orders the paths from the furthest to the nearest to the camera.
+     *
+     * @param eye the camera position in scene coordinates
+     * @return true if the order has changed
+     */
+    public boolean sort(Point3D eye){
+        if (count<2)
+            return false;
+        Point3D e = sceneToLocal(eye);
+        double ex = e.getX(), ey = e.getY(), ez = e.getZ();
+        if (keys.length<count)
+            keys = new long[count];
+
+        // (non-negative floats sort as their bits, with the path index in the low half)
+        boolean sorted = true;
+        float last = Float.MAX_VALUE;
+        for (int k=0; k<count; k++){
+            int i = order[k];
+            double dx = centres[i*3]-ex, dy = centres[i*3+1]-ey, dz = centres[i*3+2]-ez;
+            float d = (float) (dx*dx+dy*dy+dz*dz);
+            sorted &= d<=last;
+            last = d;
+            keys[k] = ((long) Float.floatToIntBits(d)<<32) | i;
+        }
+        if (sorted)
+            return false;
+        Arrays.sort(keys, 0, count);
+        for (int k=0; k<count; k++)
+            order[count-1-k] = (int) keys[k];
+        write_faces();
+        ((TriangleMesh) getMesh()).getFaces().setAll(faces);
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Octree spatial index over point positions (x, y, z per point). The points are not
+ * moved, instead a permutation of their indexes is sorted so that the points of every
+ * cell are contiguous. Every cell also keeps the centroid and mean size of its points,
+ * to be used as a representative (aggregate) point when it is too small on screen.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class Octree {
+
+    public static final int LEAF = 64;      // max points per leaf cell
+    public static final int MAX_DEPTH = 12;
+
+    /**
+     * A cubic cell, covering the points order[start] to order[end-1].
+     */
+    public static class Cell {
+        public final float x, y, z, size;   // minimum corner and side
+        public final int start, end, depth;
+        public Cell[] children;             // non-empty sub-cells (null for leaves)
+        public float cx, cy, cz;            // centroid of the points
+        public float mean_size;             // mean point size
+
+        Cell(float x, float y, float z, float size, int start, int end, int depth){
+            this.x = x; this.y = y; this.z = z; this.size = size;
+            this.start = start; this.end = end; this.depth = depth;
+        }
+
+        public int count(){
+            return end-start;
+        }
+
+        public boolean leaf(){
+            return children==null;
+        }
+
+        /**
+         * @return radius of the bounding sphere of the cell
+         */
+        public float radius(){
+            return size*0.8660254f; // (half diagonal)
+        }
+    }
+
+    public final int[] order;
+    public final Cell root;
+    private final float[] positions, sizes;
+    private final int[] octants, tmp;
+
+    /**
+     * @param positions x, y, z per point
+     * @param sizes size per point
+     */
+    public Octree(float[] positions, float[] sizes){
+        this.positions = positions;
+        this.sizes = sizes;
+        int n = sizes.length;
+        order = new int[n];
+        for (int i=0; i<n; i++)
+            order[i] = i;
+
+        // Bounding cube
+        float minx = Float.MAX_VALUE, miny = Float.MAX_VALUE, minz = Float.MAX_VALUE;
+        float maxx = -Float.MAX_VALUE, maxy = -Float.MAX_VALUE, maxz = -Float.MAX_VALUE;
+        for (int i=0; i<n; i++){
+            float px = positions[i*3], py = positions[i*3+1], pz = positions[i*3+2];
+            if (Float.isNaN(px) || Float.isNaN(py) || Float.isNaN(pz))
+                continue;
+            minx = Math.min(minx, px); maxx = Math.max(maxx, px);
+            miny = Math.min(miny, py); maxy = Math.max(maxy, py);
+            minz = Math.min(minz, pz); maxz = Math.max(maxz, pz);
+        }
+        if (minx>maxx){ // (no valid positions)
+            minx = miny = minz = 0;
+            maxx = maxy = maxz = 0;
+        }
+        float side = Math.max(Math.max(maxx-minx, maxy-miny), Math.max(maxz-minz, 1e-3f));
+
+        octants = new int[n];
+        tmp = new int[n];
+        root = build(minx, miny, minz, side, 0, n, 0);
+    }
+
+    private Cell build(float x, float y, float z, float size, int start, int end, int depth){
+        Cell c = new Cell(x, y, z, size, start, end, depth);
+
+        // Centroid and mean size (NaN coordinates fall in the first octant, but do not count here)
+        double sx = 0, sy = 0, sz = 0, ss = 0;
+        int valid = 0;
+        for (int k=start; k<end; k++){
+            int p = order[k];
+            float px = positions[p*3], py = positions[p*3+1], pz = positions[p*3+2];
+            ss += sizes[p];
+            if (Float.isNaN(px) || Float.isNaN(py) || Float.isNaN(pz))
+                continue;
+            sx += px; sy += py; sz += pz;
+            valid++;
+        }
+        c.cx = valid==0? x+size/2 : (float) (sx/valid);
+        c.cy = valid==0? y+size/2 : (float) (sy/valid);
+        c.cz = valid==0? z+size/2 : (float) (sz/valid);
+        c.mean_size = end>start? (float) (ss/(end-start)) : 0;
+
+        if (end-start<=LEAF || depth>=MAX_DEPTH)
+            return c;
+
+        // Counting sort of the points of the cell by octant
+        float half = size/2;
+        int[] counts = new int[8];
+        for (int k=start; k<end; k++){
+            int p = order[k];
+            int o = (positions[p*3]>=x+half? 1:0) | (positions[p*3+1]>=y+half? 2:0) | (positions[p*3+2]>=z+half? 4:0);
+            octants[k] = o;
+            counts[o]++;
+        }
+        int[] offsets = new int[9];
+        offsets[0] = start;
+        for (int o=0; o<8; o++)
+            offsets[o+1] = offsets[o]+counts[o];
+        int[] next = offsets.clone();
+        for (int k=start; k<end; k++)
+            tmp[next[octants[k]]++] = order[k];
+        System.arraycopy(tmp, start, order, start, end-start);
+
+        List<Cell> children = new ArrayList<Cell>(8);
+        for (int o=0; o<8; o++){
+            if (counts[o]==0)
+                continue;
+            children.add(build(x+((o&1)!=0? half:0), y+((o&2)!=0? half:0), z+((o&4)!=0? half:0),
+                               half, offsets[o], offsets[o+1], depth+1));
+        }
+        c.children = children.toArray(new Cell[0]);
+        return c;
+    }
+
+    /**
+     * Recomputes the mean point sizes of the cells under a cell, after the sizes have changed.
+     *
+     * @return the sum of the point sizes of the cell
+     */
+    public double update_sizes(Cell c){
+        double sum = 0;
+        if (c.leaf())
+            for (int k=c.start; k<c.end; k++)
+                sum += sizes[order[k]];
+        else
+            for (Cell child: c.children)
+                sum += update_sizes(child);
+        c.mean_size = c.count()>0? (float) (sum/c.count()) : 0;
+        return sum;
+    }
+
+    /**
+     * Collects the largest cells with at most the given number of points.
+     */
+    public void partition(Cell c, int max_points, List<Cell> out){
+        if (c.count()<=max_points || c.leaf())
+            out.add(c);
+        else
+            for (Cell child: c.children)
+                partition(child, max_points, out);
+    }
+
+    /**
+     * Collects the leaf cells under a cell.
+     */
+    public static void leaves(Cell c, List<Cell> out){
+        if (c.leaf())
+            out.add(c);
+        else
+            for (Cell child: c.children)
+                leaves(child, out);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import javafx.scene.Group;
+import javafx.scene.PerspectiveCamera;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.transform.NonInvertibleTransformException;
+
+/**
+ * Batched alternative to one Shape3D per data point. The points are packed into a
+ * few large TriangleMesh objects, which all share a single material with the palette
+ * texture of Colormap. The colour of each point is a texture coordinate, so recolouring
+ * only rewrites the texCoords arrays.
+ * The meshes follow the cells of an octree over the points (one MeshView per chunk of
+ * up to CHUNK points), so that chunks outside the view frustum can be hidden, and chunks
+ * that are small on screen can be drawn with one representative point per octree cell.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class PointCloud extends Group {
+
+    public static final int CHUNK = 65536; // max points per mesh
+    public static double LOD_PIXELS = 2;   // cells smaller than this on screen are aggregated
+
+    // Low-poly unit shapes, with offsets later scaled by the point size
+    private static final float[] OCTAHEDRON_POINTS = {1,0,0, -1,0,0, 0,1,0, 0,-1,0, 0,0,1, 0,0,-1};
+    private static final int[] OCTAHEDRON_FACES = {0,2,4, 2,1,4, 1,3,4, 3,0,4, 2,0,5, 1,2,5, 3,1,5, 0,3,5};
+    private static final float[] CUBE_POINTS = {-0.5f,-0.5f,-0.5f,  0.5f,-0.5f,-0.5f,  0.5f,0.5f,-0.5f,  -0.5f,0.5f,-0.5f,
+                                                -0.5f,-0.5f, 0.5f,  0.5f,-0.5f, 0.5f,  0.5f,0.5f, 0.5f,  -0.5f,0.5f, 0.5f};
+    private static final int[] CUBE_FACES = {0,2,1, 0,3,2,  4,5,6, 4,6,7,  0,1,5, 0,5,4,
+                                             2,3,7, 2,7,6,  1,2,6, 1,6,5,  0,4,7, 0,7,3};
+
+    private static PhongMaterial material;
+
+    final int shape;
+    final float[] positions; // x, y, z per point (plot coordinates)
+    final float[] sizes;
+    int[] colours, alphas;   // current palette entry and transparency level per point
+    int[] fogs;              // fog level per point (null for none)
+    final Octree octree;
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+    private final int[] rank;        // position of each point in the octree order
+    private final float[] full_tex;  // texture coordinates of all points, in the octree order
+    private float[] tex;             // (reused between recolourings of aggregated levels)
+    private boolean attached = false; // (see attach())
+
+    /**
+     * The points of an octree cell at three levels of detail: all points, one point
+     * per leaf cell, and one point per child cell. Only the full level is built
+     * upfront, the others on first use.
+     */
+    private class Chunk {
+        final Octree.Cell cell;
+        final List<List<Octree.Cell>> groups = new ArrayList<List<Octree.Cell>>(3);
+        final MeshView[] views = new MeshView[3];
+        final float leaf_size;  // mean side of the leaf cells
+        float margin;           // largest point size (points may extend out of the cell)
+        int level = -2;
+
+        Chunk(Octree.Cell cell){
+            this.cell = cell;
+            List<Octree.Cell> leaves = new ArrayList<Octree.Cell>();
+            Octree.leaves(cell, leaves);
+            List<Octree.Cell> children = new ArrayList<Octree.Cell>();
+            if (cell.leaf())
+                children.add(cell);
+            else
+                for (Octree.Cell c: cell.children)
+                    children.add(c);
+            groups.add(null);
+            groups.add(leaves);
+            groups.add(children);
+
+            double sum = 0;
+            for (Octree.Cell l: leaves)
+                sum += l.size;
+            leaf_size = (float) (sum/leaves.size());
+            update_margin();
+        }
+
+        void update_margin(){
+            float m = 0;
+            for (int k=cell.start; k<cell.end; k++)
+                m = Math.max(m, sizes[octree.order[k]]);
+            margin = m;
+        }
+
+        /**
+         * Shows the given level of detail (building it if needed), or nothing for -1.
+         */
+        void show(int level){
+            if (level>=0 && views[level]==null){
+                views[level] = level==0? full_view(cell) : aggregate_view(groups.get(level));
+                if (level==0)
+                    colour_full(this);
+                getChildren().add(views[level]);
+            }
+            for (int l=0; l<views.length; l++)
+                if (views[l]!=null)
+                    views[l].setVisible(l==level);
+            this.level = level;
+        }
+    }
+
+    /**
+     * @param shape 0 for (low-poly) spheres, 1 for boxes
+     * @param positions x, y, z per point
+     * @param sizes point size (sphere radius or box side) per point
+     * @param colours palette entry per point (see Colormap)
+     * @param alphas transparency level per point (see Colormap)
+     */
+    public PointCloud(int shape, float[] positions, float[] sizes, int[] colours, int[] alphas){
+        this.shape = shape;
+        this.positions = positions;
+        this.sizes = sizes;
+        this.colours = colours;
+        this.alphas = alphas;
+
+        octree = new Octree(positions, sizes);
+        rank = new int[sizes.length];
+        for (int k=0; k<rank.length; k++)
+            rank[octree.order[k]] = k;
+        full_tex = new float[sizes.length*2];
+        full_tex(0, sizes.length);
+        List<Octree.Cell> cells = new ArrayList<Octree.Cell>();
+        octree.partition(octree.root, CHUNK, cells);
+        for (Octree.Cell c: cells){
+            Chunk chunk = new Chunk(c);
+            chunk.show(0);
+            chunks.add(chunk);
+        }
+    }
+
+    /**
+     * Assigns the shared material to the meshes, once the cloud is shown (on the JavaFX
+     * thread). The meshes built before, e.g. on the plot builder thread, have none, as the
+     * shared material is changed and watched by the shown clouds on the JavaFX thread.
+     */
+    public void attach(){
+        attached = true;
+        PhongMaterial m = material();
+        for (Chunk chunk: chunks)
+            for (MeshView v: chunk.views)
+                if (v!=null)
+                    v.setMaterial(m);
+    }
+
+    /**
+     * The shared material of all point clouds (palette texture as diffuse map), to be
+     * used on the JavaFX thread only.
+     */
+    static PhongMaterial material(){
+        if (material==null)
+            material = new PhongMaterial();
+        if (material.getDiffuseMap()!=Colormap.texture()) // (e.g. after a palette change)
+            material.setDiffuseMap(Colormap.texture());
+        return material;
+    }
+
+    /**
+     * @return number of points
+     */
+    public int size(){
+        return positions.length/3;
+    }
+
+    /**
+     * Frustum culling and level of detail selection per chunk, for the current view.
+     *
+     * @param camera the camera of the scene
+     * @param width viewport width in pixels
+     * @param height viewport height in pixels
+     */
+    public void update_view(PerspectiveCamera camera, double width, double height){
+        update_view(camera, width, height, LOD_PIXELS);
+    }
+
+    /**
+     * As update_view(), with another threshold (in pixels) for the aggregated levels
+     * (e.g. a larger one for less detail while interacting).
+     */
+    public void update_view(PerspectiveCamera camera, double width, double height, double lod_pixels){
+        CameraProjection p;
+        try {
+            p = new CameraProjection(camera, this, width, height);
+        } catch (NonInvertibleTransformException e) {
+            return;
+        }
+        for (Chunk chunk: chunks){
+            Octree.Cell c = chunk.cell;
+            double h = c.size/2;
+            double x = c.x+h, y = c.y+h, z = c.z+h;
+            int level;
+            if (!p.visible(x, y, z, c.radius()+chunk.margin))
+                level = -1;
+            else if (p.pixels(x, y, z, h)<lod_pixels)
+                level = 2;
+            else if (p.pixels(x, y, z, chunk.leaf_size)<lod_pixels)
+                level = 1;
+            else
+                level = 0;
+            if (level!=chunk.level)
+                chunk.show(level);
+        }
+    }
+
+    /**
+     * Update point sizes in place, by rewriting the vertices of the full detail meshes.
+     * The aggregated levels are rebuilt when they are shown again.
+     *
+     * @param sizes point size per point
+     */
+    public void set_sizes(float[] sizes){
+        System.arraycopy(sizes, 0, this.sizes, 0, this.sizes.length);
+        octree.update_sizes(octree.root);
+        for (Chunk chunk: chunks){
+            chunk.update_margin();
+            ((TriangleMesh) chunk.views[0].getMesh()).getPoints().set(0, full_points(chunk.cell), 0, chunk.cell.count()*vertices());
+            for (int l=1; l<chunk.views.length; l++){
+                if (chunk.views[l]!=null){
+                    getChildren().remove(chunk.views[l]);
+                    chunk.views[l] = null;
+                }
+            }
+            if (chunk.level>0)
+                chunk.show(chunk.level);
+        }
+    }
+
+    private MeshView full_view(Octree.Cell cell){
+        MeshView mv = view(cell.count());
+        ((TriangleMesh) mv.getMesh()).getPoints().setAll(full_points(cell));
+        return mv;
+    }
+
+    private float[] full_points(Octree.Cell cell){
+        int count = cell.count();
+        float[] pos = new float[count*3];
+        float[] sz = new float[count];
+        for (int k=0; k<count; k++){
+            int p = octree.order[cell.start+k];
+            pos[k*3] = positions[p*3]; pos[k*3+1] = positions[p*3+1]; pos[k*3+2] = positions[p*3+2];
+            sz[k] = sizes[p];
+        }
+        return points(pos, sz);
+    }
+
+    private MeshView aggregate_view(List<Octree.Cell> cells){
+        int count = cells.size();
+        float[] pos = new float[count*3];
+        float[] sz = new float[count];
+        for (int k=0; k<count; k++){
+            Octree.Cell c = cells.get(k);
+            pos[k*3] = c.cx; pos[k*3+1] = c.cy; pos[k*3+2] = c.cz;
+            // (bigger for denser cells, but not much bigger than the cell itself)
+            sz[k] = Math.max(c.mean_size, Math.min(c.size/2, c.mean_size*(float) Math.cbrt(c.count())));
+        }
+        MeshView mv = view(count);
+        ((TriangleMesh) mv.getMesh()).getPoints().setAll(points(pos, sz));
+        colour_aggregate(mv, cells);
+        return mv;
+    }
+
+    /**
+     * @return number of vertex coordinates per point
+     */
+    private int vertices(){
+        return shape==0? OCTAHEDRON_POINTS.length : CUBE_POINTS.length;
+    }
+
+    /**
+     * @return the vertices of the shapes of some points
+     */
+    private float[] points(float[] pos, float[] sz){
+        float[] unit = shape==0? OCTAHEDRON_POINTS : CUBE_POINTS;
+        int vpp = unit.length/3;       // vertices per point
+        int count = sz.length;
+        float[] points = new float[count*vpp*3];
+        for (int i=0; i<count; i++){
+            for (int v=0; v<vpp; v++){
+                points[(i*vpp+v)*3]   = pos[i*3]  +unit[v*3]  *sz[i];
+                points[(i*vpp+v)*3+1] = pos[i*3+1]+unit[v*3+1]*sz[i];
+                points[(i*vpp+v)*3+2] = pos[i*3+2]+unit[v*3+2]*sz[i];
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return a mesh view for some points (with the vertices to be set)
+     */
+    private MeshView view(int count){
+        float[] unit = shape==0? OCTAHEDRON_POINTS : CUBE_POINTS;
+        int[] unit_faces = shape==0? OCTAHEDRON_FACES : CUBE_FACES;
+        int vpp = unit.length/3;       // vertices per point
+        int fpp = unit_faces.length/3; // faces per point
+
+        int[] faces = new int[count*fpp*6];
+        for (int i=0; i<count; i++){
+            // Every face of a point uses the same texture coordinate (its palette texel)
+            for (int f=0; f<fpp; f++){
+                for (int k=0; k<3; k++){
+                    faces[(i*fpp+f)*6+k*2]   = i*vpp+unit_faces[f*3+k];
+                    faces[(i*fpp+f)*6+k*2+1] = i;
+                }
+            }
+        }
+
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getTexCoords().setAll(new float[count*2]);
+        mesh.getFaces().setAll(faces);
+
+        MeshView mv = new MeshView(mesh);
+        if (attached)
+            mv.setMaterial(material());
+        mv.setCullFace(CullFace.NONE); // (winding-agnostic)
+        return mv;
+    }
+
+    private float[] tex(int count){
+        if (tex==null || tex.length<count*2)
+            tex = new float[count*2];
+        return tex;
+    }
+
+    /**
+     * Texture coordinates of a range of points (in the original order). The colours
+     * are read sequentially and the coordinates are scattered to their octree order,
+     * which is faster than gathering the colours in the octree order.
+     */
+    private void full_tex(int from, int to){
+        float[] t = full_tex;
+        float[] us = Colormap.U, vs = Colormap.V;
+        int[] c = colours, a = alphas, f = fogs, r = rank;
+        for (int p=from; p<to; p++){
+            int k = r[p]*2;
+            t[k]   = us[c[p]];
+            t[k+1] = vs[f==null? a[p] : f[p]*Colormap.ALPHA_LEVELS+a[p]];
+        }
+    }
+
+    private void colour_full(Chunk chunk){
+        ((TriangleMesh) chunk.views[0].getMesh()).getTexCoords().set(0, full_tex, chunk.cell.start*2, chunk.cell.count()*2);
+    }
+
+    /**
+     * One colour per cell: the mean palette entry of its coloured points (or the
+     * default colour if there are none), its most opaque transparency level, and
+     * its mean fog level.
+     */
+    private void colour_aggregate(MeshView mv, List<Octree.Cell> cells){
+        int count = cells.size();
+        float[] t = tex(count);
+        for (int k=0; k<count; k++){
+            Octree.Cell c = cells.get(k);
+            long sum = 0, fog = 0;
+            int coloured = 0, alpha = 0;
+            for (int j=c.start; j<c.end; j++){
+                int p = octree.order[j];
+                if (colours[p]!=Colormap.DEFAULT){
+                    sum += colours[p];
+                    coloured++;
+                }
+                alpha = Math.max(alpha, alphas[p]);
+                if (fogs!=null)
+                    fog += fogs[p];
+            }
+            t[k*2]   = Colormap.u(coloured==0? Colormap.DEFAULT : (int) Math.round(sum/(double) coloured));
+            t[k*2+1] = Colormap.v(alpha, (int) Math.round(fog/(double) c.count()));
+        }
+        ((TriangleMesh) mv.getMesh()).getTexCoords().set(0, t, 0, count*2);
+    }
+
+    /**
+     * Update point colours in place, by rewriting only the texture coordinates
+     * (of the levels of detail built so far).
+     *
+     * @param colours palette entry per point
+     * @param alphas transparency level per point
+     */
+    public void recolour(int[] colours, int[] alphas){
+        recolour(colours, alphas, fogs);
+    }
+
+    /**
+     * As recolour(), also with new fog levels.
+     *
+     * @param fogs fog level per point (see Colormap), or null for none
+     */
+    public void recolour(int[] colours, int[] alphas, int[] fogs){
+        this.colours = colours;
+        this.alphas = alphas;
+        this.fogs = fogs;
+        int n = rank.length, parts = Math.min(ForkJoinPool.getCommonPoolParallelism(), 1+n/CHUNK);
+        IntStream.range(0, parts).parallel().forEach(i -> full_tex((int) ((long) n*i/parts), (int) ((long) n*(i+1)/parts)));
+        for (Chunk chunk: chunks){
+            colour_full(chunk);
+            for (int l=1; l<chunk.views.length; l++)
+                if (chunk.views[l]!=null)
+                    colour_aggregate(chunk.views[l], chunk.groups.get(l));
+        }
+    }
+}
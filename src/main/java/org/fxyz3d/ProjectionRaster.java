@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * Projections of the points on the planes of the plot (xz, yz and xy) as images,
+ * shown as one textured rectangle per plane, instead of one flat node per point.
+ * The points are rasterised (e.g. on a worker thread) as discs or squares with the
+ * colour, size and transparency of each point, or, in density mode, as a 2D histogram
+ * coloured by the palette. The rendering cost is then independent of the point count.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class ProjectionRaster {
+
+    public static final int RESOLUTION = 1024;          // texels per side
+    public static final int DENSITY_RESOLUTION = 256;   // histogram bins per side
+    public static final int XZ = 0, YZ = 1, XY = 2;     // planes
+    // Plane of each projection group (the y=0, x=0, z=0, x=max and z=max sides)
+    private static final int[] PLANES = {XZ, YZ, XY, YZ, XY};
+
+    public final int plane, resolution;
+    public final int[] argb;                             // premultiplied, row by row
+
+    /**
+     * @return the plane (XZ, YZ or XY) of a projection group
+     */
+    public static int plane(int ax){
+        return PLANES[ax];
+    }
+
+    /**
+     * @return the normalised coordinates of a point on a plane (a is the texture u and b is v)
+     */
+    private static double a(int plane, double[][] array, int i){
+        return plane==YZ? array[1][i] : array[0][i];
+    }
+
+    private static double b(int plane, double[][] array, int i){
+        return plane==XZ? array[1][i] : array[2][i];
+    }
+
+    /**
+     * Rasterises the points as discs (round) or squares.
+     *
+     * @param array normalised x, z (depth) and y coordinates of the points, as in Juniper
+     * @param sizes radii of the discs or sides of the squares, as fractions of the axis
+     * @param colours palette entries (see Colormap.color()), snapshot of the current palette
+     * @param alphas transparency levels, or null for opaque points
+     */
+    public ProjectionRaster(int plane, double[][] array, double[] sizes, int count, boolean round,
+                            int[] colours, int[] palette, int[] alphas){
+        this.plane = plane;
+        resolution = RESOLUTION;
+        argb = new int[resolution*resolution];
+        for (int i=0; i<count; i++){
+            double a = a(plane, array, i), b = b(plane, array, i);
+            if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(sizes[i]))
+                continue;
+            int c = palette[colours[i]];
+            if (alphas!=null)
+                c = premultiply(c, Colormap.alpha(alphas[i]));
+            double r = Math.max(0.5, (round? sizes[i] : sizes[i]/2)*resolution);
+            stamp(a*resolution, b*resolution, r, round, c);
+        }
+    }
+
+    /**
+     * Counts the points per bin, and colours the non-empty bins by their (log) count.
+     */
+    public ProjectionRaster(int plane, double[][] array, int count, int[] palette){
+        this.plane = plane;
+        resolution = DENSITY_RESOLUTION;
+        int[] bins = new int[resolution*resolution];
+        int max = 0;
+        for (int i=0; i<count; i++){
+            double a = a(plane, array, i), b = b(plane, array, i);
+            if (Double.isNaN(a) || Double.isNaN(b))
+                continue;
+            int x = Math.min(resolution-1, Math.max(0, (int) (a*resolution)));
+            int y = Math.min(resolution-1, Math.max(0, (int) (b*resolution)));
+            max = Math.max(max, ++bins[y*resolution+x]);
+        }
+        argb = new int[resolution*resolution];
+        double scale = 1/Math.log1p(Math.max(1, max));
+        for (int k=0; k<bins.length; k++)
+            if (bins[k]>0)
+                argb[k] = palette[Colormap.index(Math.log1p(bins[k])*scale)];
+    }
+
+    /**
+     * Draws a disc or square over the raster ("over" compositing of premultiplied colours).
+     */
+    private void stamp(double cx, double cy, double r, boolean round, int c){
+        int x0 = Math.max(0, (int) Math.floor(cx-r)), x1 = Math.min(resolution-1, (int) Math.ceil(cx+r));
+        int y0 = Math.max(0, (int) Math.floor(cy-r)), y1 = Math.min(resolution-1, (int) Math.ceil(cy+r));
+        double r2 = r*r;
+        int alpha = c>>>24;
+        for (int y=y0; y<=y1; y++){
+            double dy = y+0.5-cy;
+            for (int x=x0; x<=x1; x++){
+                double dx = x+0.5-cx;
+                if (round && dx*dx+dy*dy>r2)
+                    continue;
+                int k = y*resolution+x;
+                argb[k] = alpha==255? c : over(c, argb[k], alpha);
+            }
+        }
+    }
+
+    private static int over(int src, int dst, int alpha){
+        int keep = 255-alpha;
+        int a = (src>>>24)+((dst>>>24)*keep+127)/255;
+        int r = ((src>>16)&255)+(((dst>>16)&255)*keep+127)/255;
+        int g = ((src>>8)&255)+(((dst>>8)&255)*keep+127)/255;
+        int b = (src&255)+((dst&255)*keep+127)/255;
+        return (a<<24)|(r<<16)|(g<<8)|b;
+    }
+
+    private static int premultiply(int c, double alpha){
+        int a = (int) Math.round(alpha*255);
+        return (a<<24) | ((((c>>16)&255)*a+127)/255<<16) | ((((c>>8)&255)*a+127)/255<<8) | (((c&255)*a+127)/255);
+    }
+
+    /**
+     * @return the opaque colours of the current palette and DEFAULT (to be read on the JavaFX thread)
+     */
+    public static int[] palette(){
+        int[] p = new int[Colormap.SIZE+1];
+        for (int i=0; i<=Colormap.SIZE; i++){
+            Color c = Colormap.color(i, 1);
+            p[i] = 0xFF000000 | ((int) Math.round(c.getRed()*255)<<16)
+                 | ((int) Math.round(c.getGreen()*255)<<8) | (int) Math.round(c.getBlue()*255);
+        }
+        return p;
+    }
+
+    /**
+     * @return the raster as an image (on the JavaFX thread)
+     */
+    public WritableImage image(){
+        WritableImage image = new WritableImage(resolution, resolution);
+        image.getPixelWriter().setPixels(0, 0, resolution, resolution, PixelFormat.getIntArgbPreInstance(), argb, 0, resolution);
+        return image;
+    }
+
+    /**
+     * Creates the rectangle of a projection group, mapping the texture to the plane.
+     *
+     * @param ax the projection group (as in Juniper.point_shadow_projections)
+     * @param length the axis length
+     * @param material material with the raster image as its diffuse map
+     */
+    public static MeshView quad(int ax, double length, PhongMaterial material){
+        int plane = plane(ax);
+        // (the far sides are the same planes, moved to the end of the third axis)
+        double offset = ax>=3? length : 0;
+        float[] points = new float[12];
+        float[] tex = {0, 0, 1, 0, 1, 1, 0, 1};
+        for (int k=0; k<4; k++){
+            double a = tex[k*2]*length, b = tex[k*2+1]*length;
+            double x, y, z;
+            switch (plane){
+                case XZ: x = a; y = 0; z = b; break;
+                case YZ: x = offset; y = b; z = a; break;
+                default: x = a; y = b; z = offset; break;
+            }
+            points[k*3] = (float) x; points[k*3+1] = (float) y; points[k*3+2] = (float) z;
+        }
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getPoints().setAll(points);
+        mesh.getTexCoords().setAll(tex);
+        mesh.getFaces().setAll(0,0, 1,1, 2,2,  0,0, 2,2, 3,3);
+        MeshView mv = new MeshView(mesh);
+        mv.setCullFace(CullFace.NONE);
+        mv.setMaterial(material);
+        return mv;
+    }
+}
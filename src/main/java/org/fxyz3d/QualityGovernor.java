@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+/**
+ * Decides the level of detail during interaction (dragging, zooming or spinning), from
+ * the recent frame times of the render loop. While interacting, every window of frames
+ * slower on average than the target steps the detail down, and full detail is restored
+ * as soon as there has been no interaction for a short time. It only keeps the state;
+ * what each level hides is up to the caller.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class QualityGovernor {
+
+    public static final int FULL = 0, REDUCED = 1, MINIMAL = 2;   // levels of detail
+
+    public static double TARGET_MS = 1000/40.0;   // slowest acceptable mean frame time
+    public static long REST_NS = 400_000_000L;     // time without interaction before full detail
+    public static final int WINDOW = 8;            // frames per decision
+
+    private int level = FULL;
+    private long last_interaction = Long.MIN_VALUE/2, last_frame = 0;
+    private double window_ms = 0;
+    private int window_frames = 0;
+
+    /**
+     * Notes an interaction (at a System.nanoTime() time, as the pulse times).
+     */
+    public void interact(long now){
+        last_interaction = now;
+    }
+
+    /**
+     * @return true if there was an interaction recently
+     */
+    public boolean interacting(long now){
+        return now-last_interaction<REST_NS;
+    }
+
+    /**
+     * Records a frame of the render loop.
+     *
+     * @param now the pulse time in ns
+     * @param continuous false for the first frame after the loop was (re)started
+     * @return true if the level has changed
+     */
+    public boolean frame(long now, boolean continuous){
+        long previous = last_frame;
+        last_frame = now;
+        if (!interacting(now)){
+            window_ms = 0;
+            window_frames = 0;
+            if (level==FULL)
+                return false;
+            level = FULL;
+            return true;
+        }
+        if (!continuous || previous==0)
+            return false;
+
+        window_ms += (now-previous)/1e6;
+        if (++window_frames<WINDOW)
+            return false;
+        double mean = window_ms/window_frames;
+        window_ms = 0;
+        window_frames = 0;
+        if (mean>TARGET_MS && level<MINIMAL){
+            level++;
+            return true;
+        }
+        return false;
+    }
+
+    public int level(){
+        return level;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+
+/**
+ * Queue of render requests from the control window (Swing thread) to the JavaFX thread.
+ * Pending requests with the same key are coalesced, so that only the latest one is run
+ * (e.g. when dragging a slider). The queue also keeps its depth and latency (from
+ * posting to running), and logs them when a request waits for longer than SLOW_MS.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class RenderQueue {
+
+    // Common request keys
+    public static final String PLOT = "plot";
+    public static final String REFRESH = "refresh"; // (seeLabels() only)
+
+    public static double SLOW_MS = 250;              // latency that is logged
+    public static long REPORT_INTERVAL_NS = 5_000_000_000L; // (at most one log entry per interval)
+    private static final Logger LOGGER = Logger.getLogger(RenderQueue.class.getName());
+
+    private static class Request {
+        final Runnable task;
+        final long posted;     // System.nanoTime()
+        final long generation;
+
+        Request(Runnable task, long posted, long generation){
+            this.task = task;
+            this.posted = posted;
+            this.generation = generation;
+        }
+    }
+
+    private final LinkedHashMap<Object, Request> pending = new LinkedHashMap<Object, Request>();
+    private final Map<Object, Long> generations = new HashMap<Object, Long>();
+    private boolean scheduled = false;
+    private Runnable on_drain = null;
+
+    // Statistics
+    private long posted = 0, coalesced = 0, executed = 0;
+    private int max_depth = 0;
+    private double last_latency = 0, max_latency = 0, total_latency = 0; // ms
+    private long last_report = 0;
+
+    /**
+     * Adds a request, replacing any pending request with the same key. The request
+     * moves to the end of the queue, after the other requests posted before it.
+     *
+     * @param key the kind of the request (any object with equals(), e.g. PLOT)
+     * @param task the code to run on the JavaFX thread
+     */
+    public synchronized void post(Object key, Runnable task){
+        posted++;
+        long generation = generations.merge(key, 1L, Long::sum);
+        if (pending.remove(key)!=null)
+            coalesced++;
+        pending.put(key, new Request(task, System.nanoTime(), generation));
+        max_depth = Math.max(max_depth, pending.size());
+        if (!scheduled){
+            scheduled = true;
+            Platform.runLater(this::drain);
+        }
+    }
+
+    private void drain(){
+        List<Map.Entry<Object, Request>> batch;
+        synchronized (this){
+            batch = new ArrayList<Map.Entry<Object, Request>>(pending.entrySet());
+            pending.clear();
+            scheduled = false;
+        }
+        for (Map.Entry<Object, Request> e: batch){
+            Request r = e.getValue();
+            String report = null;
+            synchronized (this){
+                // (it may have been superseded while waiting in this batch)
+                if (generations.get(e.getKey())!=r.generation){
+                    coalesced++;
+                    continue;
+                }
+                long now = System.nanoTime();
+                last_latency = (now-r.posted)/1e6;
+                max_latency = Math.max(max_latency, last_latency);
+                total_latency += last_latency;
+                executed++;
+                if (last_latency>SLOW_MS && now-last_report>REPORT_INTERVAL_NS){
+                    last_report = now;
+                    report = "Slow render request \""+e.getKey()+"\". "+stats();
+                }
+            }
+            if (report!=null)
+                LOGGER.log(Level.INFO, report);
+            try {
+                r.task.run();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+        if (on_drain!=null)
+            on_drain.run();
+    }
+
+    /**
+     * Sets the code to run (on the JavaFX thread) after every batch of requests,
+     * e.g. to redraw what depends on them.
+     */
+    public void set_on_drain(Runnable r){
+        on_drain = r;
+    }
+
+    /**
+     * @return number of pending requests
+     */
+    public synchronized int depth(){
+        return pending.size();
+    }
+
+    /**
+     * @return the latency of the last request (from posting to running), in ms
+     */
+    public synchronized double latency(){
+        return last_latency;
+    }
+
+    public synchronized String stats(){
+        return String.format("Render queue: depth %d (max %d), posted %d, coalesced %d, run %d, latency %.1f ms (avg %.1f, max %.1f)",
+                pending.size(), max_depth, posted, coalesced, executed,
+                last_latency, executed==0? 0 : total_latency/executed, max_latency);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2025  Philippos Papaphilippou
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ */
+package org.fxyz3d; // (official way of using FXyz)
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Software rendering of the points as flat discs (splats), for datasets too large for
+ * meshes. Every frame, the points are projected with the current camera, binned into
+ * screen tiles, and the tiles are rasterised in parallel with a depth buffer (the nearest
+ * splat of every pixel is shown). The image is a PixelBuffer over the same pixel array
+ * (only written within its updateBuffer()), shown in an ImageView behind the transparent
+ * 3D view, so that the axes, ticks and labels are drawn over it. Nothing of it is in the
+ * scene graph or on the GPU.
+ *
+ * @author Philippos Papaphilippou
+ */
+public class SplatRenderer {
+
+    public static final int TILE = 64;             // tile side in pixels
+    public static final float MAX_RADIUS = 16;     // largest splat radius in pixels
+    static final int BATCH = 1<<16;                // points per projection task
+    private static final int ENTRY = 5;            // x, y, depth, radius and colour per binned splat
+
+    private final ImageView view = new ImageView();
+    private int width, height;
+    private int[] pixels = new int[0];             // premultiplied ARGB, row by row (shared with the image)
+    private float[] depth = new float[0];
+    private PixelBuffer<IntBuffer> buffer;
+
+    private float[] positions, sizes;              // x, y, z and size per point (plot coordinates)
+    private int[] colours, alphas;                 // palette entry and transparency level per point
+
+    // Scratch of a frame: the projected points, and the points of every tile
+    private float[] projected = new float[0];      // x, y, depth and radius per drawn point
+    private int[] offsets = new int[0];            // per batch and tile (counts, then positions in entries)
+    private int[] starts = new int[0];             // first entry per tile
+    private int[] entries = new int[0];            // (see ENTRY)
+    private float[] ranges = new float[0];         // nearest and furthest depth per batch
+
+    // Colour of every palette entry, transparency level and fog level (premultiplied)
+    private final int[] table = new int[(Colormap.SIZE+1)*Colormap.ALPHA_LEVELS*Colormap.FOG_LEVELS];
+    private int table_palette = -1;
+    private double table_fog = -1;
+
+    // What the current image shows (see render())
+    private CameraProjection last_projection;
+    private int last_stride;
+    private boolean last_depth_colours, stale = true;
+
+    public SplatRenderer(){
+        view.setMouseTransparent(true);
+        view.setManaged(false);
+    }
+
+    /**
+     * @return the view of the image (to be placed behind the 3D view)
+     */
+    public ImageView view(){
+        return view;
+    }
+
+    /**
+     * @return true if there are points to render
+     */
+    public boolean active(){
+        return positions!=null;
+    }
+
+    /**
+     * Replaces the points (null for none, which also clears the image).
+     *
+     * @param positions x, y, z per point, in the local coordinates of the projection
+     * @param sizes radius per point (in the same units)
+     * @param colours palette entry per point (see Colormap)
+     * @param alphas transparency level per point (see Colormap)
+     */
+    public void set_points(float[] positions, float[] sizes, int[] colours, int[] alphas){
+        this.positions = positions;
+        this.sizes = sizes;
+        this.colours = colours;
+        this.alphas = alphas;
+        stale = true;
+        if (positions==null)
+            view.setImage(null);
+    }
+
+    public void set_sizes(float[] sizes){
+        this.sizes = sizes;
+        stale = true;
+    }
+
+    public void recolour(int[] colours, int[] alphas){
+        this.colours = colours;
+        this.alphas = alphas;
+        stale = true;
+    }
+
+    /**
+     * Renders the points, unless the image is already up to date (on the JavaFX thread).
+     *
+     * @param p the projection to the viewport (from the local coordinates of the points)
+     * @param width viewport width in pixels
+     * @param height viewport height in pixels
+     * @param stride only every stride-th point is drawn (e.g. for less detail while interacting)
+     * @param depth_colours colour by the depth from the camera instead of the palette entries
+     * @param fog the depth in the fog as in Juniper.fog_plane() (null for no fog)
+     * @return true if the image has changed
+     */
+    public boolean render(CameraProjection p, int width, int height, int stride, boolean depth_colours, double[] fog){
+        if (positions==null || width<=0 || height<=0)
+            return false;
+        if (Colormap.palette()!=table_palette || Colormap.fog()!=table_fog)
+            update_table();
+        else if (!stale && stride==last_stride && depth_colours==last_depth_colours
+                 && width==this.width && height==this.height && CameraProjection.same(p, last_projection))
+            return false;
+        stale = false;
+        last_projection = p;
+        last_stride = stride;
+        last_depth_colours = depth_colours;
+        resize(width, height);
+
+        int count = (positions.length/3+stride-1)/stride;
+        int batches = (count+BATCH-1)/BATCH;
+        int columns = (width+TILE-1)/TILE, rows = (height+TILE-1)/TILE, tiles = columns*rows;
+        if (projected.length<count*4)
+            projected = new float[count*4];
+        if (offsets.length<batches*tiles)
+            offsets = new int[batches*tiles];
+        if (ranges.length<batches*2)
+            ranges = new float[batches*2];
+        if (starts.length<tiles+1)
+            starts = new int[tiles+1];
+        Arrays.fill(offsets, 0, batches*tiles, 0);
+
+        // Project and count the splats per tile (in batches of points)
+        IntStream.range(0, batches).parallel().forEach(b -> {
+            int from = b*BATCH, to = Math.min(count, from+BATCH);
+            p.project(positions, stride, from, to, projected);
+            float near = Float.MAX_VALUE, far = 0;
+            for (int k=from; k<to; k++){
+                int o = k*4;
+                if (Float.isNaN(projected[o]))
+                    continue;
+                float r = Math.max(0.5f, Math.min(MAX_RADIUS, sizes[k*stride]*projected[o+3]));
+                projected[o+3] = r;
+                if (!(r>0) || projected[o]+r<0 || projected[o]-r>width || projected[o+1]+r<0 || projected[o+1]-r>height){
+                    projected[o] = Float.NaN; // (off screen, or without size)
+                    continue;
+                }
+                near = Math.min(near, projected[o+2]);
+                far = Math.max(far, projected[o+2]);
+                int c0 = tile(projected[o]-r, width), c1 = tile(projected[o]+r, width);
+                int r0 = tile(projected[o+1]-r, height), r1 = tile(projected[o+1]+r, height);
+                for (int row=r0; row<=r1; row++)
+                    for (int c=c0; c<=c1; c++)
+                        offsets[b*tiles+row*columns+c]++;
+            }
+            ranges[b*2] = near;
+            ranges[b*2+1] = far;
+        });
+
+        float near = Float.MAX_VALUE, far = 0;
+        for (int b=0; b<batches; b++){
+            near = Math.min(near, ranges[b*2]);
+            far = Math.max(far, ranges[b*2+1]);
+        }
+        final float nearest = near, span = far-near;
+
+        // Bin the splats with their final colours (the entries of every tile are contiguous,
+        // in the order of the points, so that the tiles are drawn with sequential reads)
+        int total = 0;
+        for (int t=0; t<tiles; t++){
+            starts[t] = total;
+            for (int b=0; b<batches; b++){
+                int c = offsets[b*tiles+t];
+                offsets[b*tiles+t] = total;
+                total += c;
+            }
+        }
+        starts[tiles] = total;
+        if (entries.length<total*ENTRY)
+            entries = new int[(total+total/4)*ENTRY];
+        IntStream.range(0, batches).parallel().forEach(b -> {
+            for (int k=b*BATCH, to=Math.min(count, k+BATCH); k<to; k++){
+                int o = k*4, i = k*stride;
+                if (Float.isNaN(projected[o]))
+                    continue;
+                float r = projected[o+3];
+                int colour = depth_colours? Colormap.index((projected[o+2]-nearest)/span) : colours[i];
+                int fog_level = fog==null? 0
+                        : Colormap.fog_level(fog[0]*positions[i*3]+fog[1]*positions[i*3+1]+fog[2]*positions[i*3+2]+fog[3]);
+                int argb = table[(fog_level*Colormap.ALPHA_LEVELS+alphas[i])*(Colormap.SIZE+1)+colour];
+                int c0 = tile(projected[o]-r, width), c1 = tile(projected[o]+r, width);
+                int r0 = tile(projected[o+1]-r, height), r1 = tile(projected[o+1]+r, height);
+                for (int row=r0; row<=r1; row++){
+                    for (int c=c0; c<=c1; c++){
+                        int e = offsets[b*tiles+row*columns+c]++*ENTRY;
+                        entries[e] = Float.floatToRawIntBits(projected[o]);
+                        entries[e+1] = Float.floatToRawIntBits(projected[o+1]);
+                        entries[e+2] = Float.floatToRawIntBits(projected[o+2]);
+                        entries[e+3] = Float.floatToRawIntBits(r);
+                        entries[e+4] = argb;
+                    }
+                }
+            }
+        });
+
+        // Rasterise the tiles (only within updateBuffer(), as the previous frame may be
+        // read by the render thread until then, and null for the whole image as dirty)
+        if (view.getImage()==null)
+            view.setImage(new WritableImage(buffer));
+        int parts = Math.min(tiles, ForkJoinPool.getCommonPoolParallelism()*4);
+        buffer.updateBuffer(b -> {
+            IntStream.range(0, parts).parallel().forEach(part -> {
+                for (int t=part; t<tiles; t+=parts)
+                    draw_tile(t, columns);
+            });
+            return null;
+        });
+        return true;
+    }
+
+    private static int tile(float coordinate, int limit){
+        return Math.max(0, Math.min(limit-1, (int) coordinate))/TILE;
+    }
+
+    private void draw_tile(int t, int columns){
+        int x0 = (t%columns)*TILE, y0 = (t/columns)*TILE;
+        int x1 = Math.min(width, x0+TILE), y1 = Math.min(height, y0+TILE);
+        for (int y=y0; y<y1; y++){
+            Arrays.fill(pixels, y*width+x0, y*width+x1, 0);
+            Arrays.fill(depth, y*width+x0, y*width+x1, Float.MAX_VALUE);
+        }
+        for (int e=starts[t]*ENTRY, end=starts[t+1]*ENTRY; e<end; e+=ENTRY){
+            float cx = Float.intBitsToFloat(entries[e]), cy = Float.intBitsToFloat(entries[e+1]);
+            float d = Float.intBitsToFloat(entries[e+2]), r = Float.intBitsToFloat(entries[e+3]);
+            int c = entries[e+4];
+
+            if (r<=0.75f){ // (a single pixel)
+                int x = (int) Math.floor(cx), y = (int) Math.floor(cy);
+                if (x>=x0 && x<x1 && y>=y0 && y<y1 && d<depth[y*width+x]){
+                    depth[y*width+x] = d;
+                    pixels[y*width+x] = c;
+                }
+                continue;
+            }
+            // (the pixels with their centres in the disc, row by row, within the tile)
+            int py0 = Math.max(y0, (int) Math.ceil(cy-r-0.5f)), py1 = Math.min(y1-1, (int) Math.floor(cy+r-0.5f));
+            for (int y=py0; y<=py1; y++){
+                float dy = y+0.5f-cy, half = (float) Math.sqrt(Math.max(0, r*r-dy*dy));
+                int px0 = Math.max(x0, (int) Math.ceil(cx-half-0.5f)), px1 = Math.min(x1-1, (int) Math.floor(cx+half-0.5f));
+                for (int at=y*width+px0, last=y*width+px1; at<=last; at++){
+                    if (d<depth[at]){
+                        depth[at] = d;
+                        pixels[at] = c;
+                    }
+                }
+            }
+        }
+    }
+
+    private void resize(int width, int height){
+        if (width==this.width && height==this.height && buffer!=null)
+            return;
+        this.width = width;
+        this.height = height;
+        pixels = new int[width*height];
+        depth = new float[width*height];
+        buffer = new PixelBuffer<IntBuffer>(width, height, IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+        view.setImage(null); // (a new image over the new buffer, once rendered)
+    }
+
+    private void update_table(){
+        table_palette = Colormap.palette();
+        table_fog = Colormap.fog();
+        int n = Colormap.SIZE+1;
+        for (int f=0; f<Colormap.FOG_LEVELS; f++){
+            for (int index=0; index<n; index++){
+                Color c = Colormap.color(index, 1, f);
+                int red = (int) Math.round(c.getRed()*255), green = (int) Math.round(c.getGreen()*255), blue = (int) Math.round(c.getBlue()*255);
+                for (int level=0; level<Colormap.ALPHA_LEVELS; level++){
+                    int a = (int) Math.round(Colormap.alpha(level)*255);
+                    table[(f*Colormap.ALPHA_LEVELS+level)*n+index] = (a<<24) | ((red*a+127)/255<<16)
+                                                                         | ((green*a+127)/255<<8) | ((blue*a+127)/255);
+                }
+            }
+        }
+        stale = true;
+    }
+}